@@ -0,0 +1,50 @@
+package dds20.benchmark;
+
+import dds20.rest.dto.InquiryPostDTO;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
+import dds20.service.Transport;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.HttpEntity;
+
+/**
+ * Hands everything a node sends to a Blackhole, so the benchmarks measure the node up to the transport
+ */
+final class DiscardingTransport implements Transport {
+
+    private final Blackhole blackhole;
+
+    DiscardingTransport(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void send(String recipient, String session, HttpEntity<MessagePostDTO> request, Long seq,
+                     Long traceId, Long spanId) {
+        blackhole.consume(request);
+        blackhole.consume(seq);
+        blackhole.consume(traceId);
+        blackhole.consume(spanId);
+    }
+
+    @Override
+    public void defer(String recipient, String session, MessagePostDTO message, Long seq, Long traceId,
+                      Long spanId) {
+        blackhole.consume(message);
+    }
+
+    @Override
+    public void sendInquiry(String recipient, String session, HttpEntity<InquiryPostDTO> request) {
+        blackhole.consume(request);
+    }
+
+    @Override
+    public void sendPaxos(String recipient, String session, PaxosPostDTO message) {
+        blackhole.consume(message);
+    }
+}
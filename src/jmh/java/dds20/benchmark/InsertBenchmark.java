@@ -0,0 +1,151 @@
+package dds20.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert Benchmark
+ * Writes log rows into the DATA table the way Hibernate does with the old and with the current storage setup,
+ * one operation is one transaction of ROWS rows. The statements are sent over JDBC directly, so both setups
+ * run in the same JVM without two Hibernate configurations:
+ * - single: one sequence call per id and every insert executed on its own, the old @GeneratedValue default
+ * - pooled: one sequence call per ALLOCATION_SIZE ids (pooled-lo) and the inserts sent as one JDBC batch
+ * The storage is the in-memory H2 of the default profile or the file-backed H2 of the prod profile.
+ * Rows per second are the operations per second times ROWS.
+ *
+ * Transactions per second on one core, JMH 1.23, JDK 11, H2 1.4.200 (10 iterations of 2s, 99.9% error):
+ *   single mem    8370 +- 1316     pooled mem    9534 +- 1835
+ *   single file   6400 +- 2360     pooled file   8425 +- 2974
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    // log rows written by one protocol step, e.g. a coordinator receiving a vote and sending the decision
+    private static final int ROWS = 20;
+    private static final int ALLOCATION_SIZE = 50;
+
+    private static final String INSERT = "insert into data (session, type, opcode, event, peer, trans_id, is_status, "
+            + "time_micros, trace_id, span_id, parent_id, id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Param({"mem", "file"})
+    public String storage;
+
+    private Connection connection;
+    private PreparedStatement insert;
+    private PreparedStatement singleSequence;
+    private PreparedStatement pooledSequence;
+    private File directory;
+    private long nextId;
+    private long lastId;
+    private long row;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String url = "jdbc:h2:mem:insert";
+        if (storage.equals("file")) {
+            directory = new File(System.getProperty("java.io.tmpdir"), "dds20-insert-benchmark");
+            url = "jdbc:h2:file:" + new File(directory, "data").getAbsolutePath();
+        }
+        connection = DriverManager.getConnection(url, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+            statement.execute("create sequence hibernate_sequence start with 1 increment by 1");
+            statement.execute("create sequence data_seq start with 1 increment by " + ALLOCATION_SIZE);
+            statement.execute("create table data (id bigint not null, session varchar(255) not null, "
+                    + "type tinyint not null, opcode tinyint, event tinyint, peer integer, trans_id integer, "
+                    + "is_status boolean not null, time_micros bigint, trace_id bigint, span_id bigint, "
+                    + "parent_id bigint, primary key (id))");
+            statement.execute("create index data_session_idx on data (session, id)");
+        }
+        connection.setAutoCommit(false);
+        insert = connection.prepareStatement(INSERT);
+        singleSequence = connection.prepareStatement("call next value for hibernate_sequence");
+        pooledSequence = connection.prepareStatement("call next value for data_seq");
+    }
+
+    /**
+     * Every iteration starts with an empty table, a growing index would make the later iterations slower
+     */
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("truncate table data");
+        }
+        connection.commit();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects delete files");
+        }
+        connection.close();
+        if (directory != null) {
+            directory.delete();
+        }
+    }
+
+    @Benchmark
+    public void single() throws SQLException {
+        for (int i = 0; i < ROWS; i++) {
+            bind(next(singleSequence));
+            insert.executeUpdate();
+        }
+        connection.commit();
+    }
+
+    @Benchmark
+    public void pooled() throws SQLException {
+        for (int i = 0; i < ROWS; i++) {
+            if (nextId == lastId) {
+                // pooled-lo: the sequence value is the first id of the next block
+                nextId = next(pooledSequence);
+                lastId = nextId + ALLOCATION_SIZE;
+            }
+            bind(nextId++);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        connection.commit();
+    }
+
+    private long next(PreparedStatement sequence) throws SQLException {
+        try (ResultSet result = sequence.executeQuery()) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    /**
+     * A send entry of a session, like most of the log
+     */
+    private void bind(long id) throws SQLException {
+        row++;
+        insert.setString(1, "session-" + (row / 100));
+        insert.setInt(2, 1);
+        insert.setInt(3, 3);
+        insert.setNull(4, Types.TINYINT);
+        insert.setInt(5, 2);
+        insert.setNull(6, Types.INTEGER);
+        insert.setBoolean(7, true);
+        insert.setLong(8, row);
+        insert.setLong(9, row * 31);
+        insert.setLong(10, row * 17);
+        insert.setNull(11, Types.BIGINT);
+        insert.setLong(12, id);
+    }
+}
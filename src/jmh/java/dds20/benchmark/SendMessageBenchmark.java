@@ -0,0 +1,157 @@
+package dds20.benchmark;
+
+import dds20.entity.Node;
+import dds20.entity.Opcode;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.service.AcceptorService;
+import dds20.service.AdmissionService;
+import dds20.service.CompactionService;
+import dds20.service.DataService;
+import dds20.service.DecisionCache;
+import dds20.service.FailureDetector;
+import dds20.service.KeyValueStore;
+import dds20.service.MetricsService;
+import dds20.service.NodeService;
+import dds20.service.PeerService;
+import dds20.service.ResultService;
+import dds20.service.SessionState;
+import dds20.service.Shard;
+import dds20.service.ShardRouter;
+import dds20.service.TracingService;
+import dds20.simulation.InMemoryAcceptorRepository;
+import dds20.simulation.InMemoryDataRepository;
+import dds20.simulation.InMemoryKeyValueRepository;
+import dds20.simulation.InMemoryNodeRepository;
+import dds20.simulation.InMemoryPeerRepository;
+import dds20.simulation.NoopTransactionManager;
+import dds20.simulation.VirtualScheduler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send Message Benchmark
+ * Measures what DataService.sendMessage costs on the sending node with tracing on, up to the transport, which
+ * only hands the request to a Blackhole. Run with the GC profiler to see the bytes allocated per send:
+ * ./gradlew jmh, the profiler is configured in build.gradle
+ * - cached: the session's cached request, the trace context goes beside it
+ * - cachedWithCopy: the cached request copied to set the trace context, as it was done before
+ * - rebuilt: a request built for every send, as it is for a retransmission
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendMessageBenchmark {
+
+    private static final String SESSION = "benchmark";
+    private static final String COORDINATOR = "http://localhost:8081";
+    private static final String SUBORDINATE = "http://localhost:8082";
+    private static final Long TRACE_ID = 1L;
+    private static final Long SPAN_ID = 2L;
+
+    private DataService dataService;
+    private SessionState state;
+    private HttpHeaders headers;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        PlatformTransactionManager transactionManager = new NoopTransactionManager();
+        MetricsService metricsService = new MetricsService();
+        InMemoryNodeRepository nodeRepository = new InMemoryNodeRepository();
+        NodeService nodeService = new NodeService(nodeRepository);
+        InMemoryDataRepository dataRepository = new InMemoryDataRepository();
+        // the shard tasks are never run, the benchmark calls sendMessage itself
+        Shard shard = new Shard(0, new VirtualScheduler());
+        ShardRouter shardRouter = new ShardRouter(Collections.singletonList(shard));
+        TracingService tracingService = new TracingService(null) {
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+        };
+        AcceptorService acceptorService = new AcceptorService(new InMemoryAcceptorRepository());
+        dataService = new DataService(nodeService,
+                new CompactionService(dataRepository, acceptorService, shardRouter, transactionManager),
+                new PeerService(new InMemoryPeerRepository(), transactionManager),
+                shardRouter,
+                transactionManager,
+                dataRepository,
+                nodeRepository,
+                new DiscardingTransport(blackhole),
+                metricsService,
+                new AdmissionService(metricsService, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 1),
+                tracingService,
+                new DecisionCache(metricsService, 10_000, Long.MAX_VALUE / 2),
+                new FailureDetector(metricsService, null, false, 500, 8, 30_000),
+                acceptorService,
+                new KeyValueStore(metricsService, shardRouter, new InMemoryKeyValueRepository(), transactionManager),
+                new ResultService(tracingService, metricsService, 0),
+                true,
+                false,
+                2000);
+
+        Node node = new Node();
+        node.setNode(COORDINATOR);
+        node.setSession(SESSION);
+        node.setIsCoordinator(true);
+        node.setIsSubordinate(false);
+        node.setCoordinator(COORDINATOR);
+        node.setSubordinates(new ArrayList<>(Arrays.asList(SUBORDINATE, "http://localhost:8083")));
+        node.setActive(true);
+        node.setVote(true);
+        node.setDieAfter("never");
+        node.setMode("central");
+        node.setAcceptors(new ArrayList<>());
+        nodeService.saveNode(node);
+
+        state = shard.getSession(SESSION);
+        state.setTraceId(TRACE_ID);
+        headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public void cached() {
+        state.setSendSpan(SPAN_ID);
+        dataService.sendMessage(SESSION, SUBORDINATE, Opcode.COMMIT, 1);
+    }
+
+    @Benchmark
+    public HttpEntity<MessagePostDTO> cachedWithCopy() {
+        state.setSendSpan(SPAN_ID);
+        HttpEntity<MessagePostDTO> request = state.getMessageRequests().get(Opcode.COMMIT);
+        if (request == null) {
+            dataService.sendMessage(SESSION, SUBORDINATE, Opcode.COMMIT, 1);
+            request = state.getMessageRequests().get(Opcode.COMMIT);
+        }
+        MessagePostDTO message = request.getBody();
+        MessagePostDTO copy = new MessagePostDTO();
+        copy.setMessage(message.getMessage());
+        copy.setNode(message.getNode());
+        copy.setCoordinator(message.getCoordinator());
+        copy.setTransId(message.getTransId());
+        copy.setChain(message.getChain());
+        copy.setAcceptors(message.getAcceptors());
+        copy.setInstance(message.getInstance());
+        copy.setTraceId(state.getTraceId());
+        copy.setSpanId(state.takeSendSpan());
+        return new HttpEntity<>(copy, headers);
+    }
+
+    @Benchmark
+    public void rebuilt() {
+        state.setSendSpan(SPAN_ID);
+        dataService.sendMessage(SESSION, SUBORDINATE, Opcode.COMMIT, 2);
+    }
+}
@@ -0,0 +1,127 @@
+package dds20.benchmark;
+
+import dds20.rest.dto.MessagePostDTO;
+import dds20.service.FrameCodec;
+import dds20.service.MetricsService;
+import dds20.service.TcpService;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transport Benchmark
+ * Sends the same protocol message to a running node, first over HTTP and then over the TCP transport, and reports
+ * messages per CPU second of the receiving node, i.e. per core, and of the sender. The node has to run
+ * with dds20.tcp.enabled=true. The session is not set up on the node, so every message is dropped right after
+ * it was received and the numbers compare the transports, not the protocol.
+ * The HTTP senders block on every response while the TCP sender writes frames without waiting, so the wall
+ * clock time of the runs is not comparable and is not reported as a rate. The CPU time the node and the sender
+ * spend on all messages is.
+ *
+ * Usage: ./gradlew benchmark --args="[node url] [messages] [http threads]"
+ */
+public class TransportBenchmark {
+
+    private static final String SESSION = "benchmark";
+
+    public static void main(String[] args) throws Exception {
+        String node = (args.length > 0) ? args[0] : "http://localhost:8081";
+        int messages = (args.length > 1) ? Integer.parseInt(args[1]) : 100_000;
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : 8;
+        RestTemplate restTemplate = new RestTemplate();
+
+        MessagePostDTO message = new MessagePostDTO();
+        message.setMessage("YES");
+        message.setNode("http://benchmark");
+        message.setTransId(1);
+
+        // warm up both paths before measuring
+        runHttp(restTemplate, node, message, messages / 10, threads);
+        runTcp(restTemplate, node, message, messages / 10);
+
+        report("http", messages, restTemplate, node, () -> runHttp(restTemplate, node, message, messages, threads));
+        report("tcp ", messages, restTemplate, node, () -> runTcp(restTemplate, node, message, messages));
+        System.exit(0);
+    }
+
+    private static void report(String name, int messages, RestTemplate restTemplate, String node, Run run)
+            throws Exception {
+        long receiverCpu = metric(restTemplate, node, "process.cpuMillis");
+        long senderCpu = cpuMillis();
+        long start = System.nanoTime();
+        run.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double receiverSeconds = (metric(restTemplate, node, "process.cpuMillis") - receiverCpu) / 1000.0;
+        double senderSeconds = (cpuMillis() - senderCpu) / 1000.0;
+        System.out.printf("%s: %d messages in %.2fs, %.0f per CPU second of the node, %.0f of the sender%n",
+                name, messages, seconds, messages / receiverSeconds, messages / senderSeconds);
+    }
+
+    private static void runHttp(RestTemplate restTemplate, String node, MessagePostDTO message, int messages,
+                                int threads) throws InterruptedException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<MessagePostDTO> request = new HttpEntity<>(message, headers);
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int count = messages / threads + ((t < messages % threads) ? 1 : 0);
+            Thread sender = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    restTemplate.exchange(node + "/message?session={session}", HttpMethod.POST, request,
+                            Void.class, SESSION);
+                }
+            });
+            sender.start();
+            senders.add(sender);
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+    }
+
+    /**
+     * The frames are written asynchronously, the run ends once the node counted all of them as received
+     */
+    private static void runTcp(RestTemplate restTemplate, String node, MessagePostDTO message, int messages)
+            throws InterruptedException {
+        TcpService tcpService = new TcpService(new MetricsService(), true, 1000, 1000, 10_000);
+        long received = metric(restTemplate, node, "tcp.received");
+        for (int i = 0; i < messages; i++) {
+            while (!tcpService.send(node, FrameCodec.encodeMessage(SESSION, message))) {
+                Thread.sleep(1);
+            }
+        }
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (metric(restTemplate, node, "tcp.received") - received < messages) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The node did not receive all frames, is dds20.tcp.enabled set?");
+            }
+            Thread.sleep(10);
+        }
+        tcpService.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long metric(RestTemplate restTemplate, String node, String name) {
+        Map<String, Object> metrics = restTemplate.getForObject(node + "/metrics", Map.class);
+        Object value = (metrics != null) ? metrics.get(name) : null;
+        return (value != null) ? ((Number) value).longValue() : 0;
+    }
+
+    private static long cpuMillis() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime() / 1_000_000;
+    }
+
+    private interface Run {
+
+        void run() throws Exception;
+    }
+}
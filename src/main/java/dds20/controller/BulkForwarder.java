@@ -0,0 +1,69 @@
+package dds20.controller;
+
+import dds20.service.ShardRouter;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bulk Forwarder
+ * Bulk requests carry many sessions in their body, so the ShardRoutingFilter cannot route them as a whole.
+ * This class splits them by the owning instance, forwards one bulk request per foreign instance and
+ * leaves the local part to the caller.
+ */
+@Component
+public class BulkForwarder {
+
+    private final ShardRouter shardRouter;
+    private final RestTemplate restTemplate;
+
+    BulkForwarder(ShardRouter shardRouter, RestTemplate restTemplate) {
+        this.shardRouter = shardRouter;
+        this.restTemplate = restTemplate;
+    }
+
+    /**
+     * Forwards the items of foreign sessions and returns the items of local sessions
+     */
+    public <T, R> List<T> forward(HttpServletRequest request, List<T> items, Function<T, String> session,
+                                  Class<R> responseType, Consumer<R> onResponse) {
+        // a forwarded bulk request is always handled locally, like in the ShardRoutingFilter
+        if (request.getHeader(ShardRoutingFilter.FORWARDED_HEADER) != null) {
+            return items;
+        }
+        List<T> local = new ArrayList<>();
+        Map<String, List<T>> foreign = new LinkedHashMap<>();
+        for (T item : items) {
+            String instance = shardRouter.getInstance(session.apply(item));
+            if (instance == null) {
+                local.add(item);
+            }
+            else {
+                foreign.computeIfAbsent(instance, k -> new ArrayList<>()).add(item);
+            }
+        }
+        if (foreign.isEmpty()) {
+            return local;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(ShardRoutingFilter.FORWARDED_HEADER, "1");
+        for (Map.Entry<String, List<T>> e : foreign.entrySet()) {
+            R response = restTemplate.postForObject(e.getKey() + request.getRequestURI(),
+                    new HttpEntity<>(e.getValue(), headers), responseType);
+            onResponse.accept(response);
+        }
+        return local;
+    }
+}
@@ -1,17 +1,43 @@
 package dds20.controller;
 
 import dds20.entity.Data;
+import dds20.entity.Node;
+import dds20.entity.Opcode;
+import dds20.rest.dto.BulkStartGetDTO;
 import dds20.rest.dto.DataGetDTO;
 import dds20.rest.dto.InquiryPostDTO;
 import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
+import dds20.rest.dto.ResultGetDTO;
+import dds20.rest.dto.StartGetDTO;
+import dds20.rest.dto.TimelineGetDTO;
 import dds20.rest.mapper.DTOMapper;
 import dds20.service.DataService;
+import dds20.service.EpochService;
+import dds20.service.ExportService;
+import dds20.service.InboxService;
 import dds20.service.NodeService;
+import dds20.service.OutboxService;
+import dds20.service.ResultService;
+import dds20.service.TracingService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Data Controller
@@ -23,17 +49,116 @@ public class DataController {
 
     private final DataService dataService;
     private final NodeService nodeService;
+    private final InboxService inboxService;
+    private final BulkForwarder bulkForwarder;
+    private final TracingService tracingService;
+    private final ExportService exportService;
+    private final EpochService epochService;
+    private final ResultService resultService;
+    private final long maxWait;
 
-    DataController(DataService dataService, NodeService nodeService) {
+    DataController(DataService dataService, NodeService nodeService, InboxService inboxService,
+                   BulkForwarder bulkForwarder, TracingService tracingService, ExportService exportService,
+                   EpochService epochService, ResultService resultService,
+                   @Value("${dds20.result.maxWait:30000}") long maxWait) {
         this.dataService = dataService;
         this.nodeService = nodeService;
+        this.inboxService = inboxService;
+        this.bulkForwarder = bulkForwarder;
+        this.tracingService = tracingService;
+        this.exportService = exportService;
+        this.epochService = epochService;
+        this.resultService = resultService;
+        this.maxWait = maxWait;
     }
 
     @PostMapping("/start")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public void postStart(@RequestParam("session") String session) {
-        dataService.startTransaction(session);
+    public StartGetDTO postStart(@RequestParam("session") String session) {
+        StartGetDTO result = new StartGetDTO();
+        result.setSession(session);
+        result.setHandle(epochService.isEnabled() ? epochService.submit(session) : dataService.startTransaction(session));
+        result.setResult("/result?session=" + session + "&handle=" + result.getHandle());
+        return result;
+    }
+
+    /**
+     * Returns the outcome and the phase timings of a transaction started here
+     * With wait > 0 the request is held until the transaction is decided or wait ms passed, whatever comes first
+     * With the handle /start returned, only that run's result is returned: 410 if a newer run replaced it or the
+     * handle is no longer kept, 404 if this server never handed it out. Without it the latest run's result is returned.
+     */
+    @GetMapping("/result")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public DeferredResult<ResultGetDTO> getResult(@RequestParam("session") String session,
+                                                  @RequestParam(value = "handle", required = false) Long handle,
+                                                  @RequestParam(value = "wait", defaultValue = "0") long wait) {
+        ResultGetDTO current = resultService.getResult(session);
+        if (handle != null && (current == null || !handle.equals(current.getHandle()))) {
+            throw staleHandle(session, handle, current);
+        }
+        if (current == null) {
+            // the handle is gone, e.g. after a restart, the decision is still in the log
+            if (nodeService.getNode(session) == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No transaction for session " + session);
+            }
+            Opcode outcome = dataService.getOutcome(session);
+            current = new ResultGetDTO();
+            current.setSession(session);
+            current.setDone(outcome != null);
+            current.setOutcome((outcome != null) ? outcome.name() : null);
+        }
+        DeferredResult<ResultGetDTO> result = new DeferredResult<>(Math.min(wait, maxWait), current);
+        CompletableFuture<ResultGetDTO> future = (current.getHandle() != null)
+                ? resultService.awaitResult(session, current.getHandle()) : null;
+        if (current.getDone() || wait <= 0 || future == null) {
+            result.setResult(current);
+        }
+        else {
+            future.thenAccept(result::setResult);
+        }
+        return result;
+    }
+
+    private ResponseStatusException staleHandle(String session, long handle, ResultGetDTO current) {
+        if (current == null) {
+            if (nodeService.getNode(session) == null) {
+                return new ResponseStatusException(HttpStatus.NOT_FOUND, "No transaction for session " + session);
+            }
+            // dropped as one of the oldest, by a new setup or a restart
+            return new ResponseStatusException(HttpStatus.GONE, "Handle " + handle + " of session " + session
+                    + " is no longer kept, the latest outcome is returned without a handle");
+        }
+        if (handle < current.getHandle()) {
+            return new ResponseStatusException(HttpStatus.GONE, "Handle " + handle + " of session " + session
+                    + " was replaced by handle " + current.getHandle());
+        }
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown handle " + handle + " of session " + session);
+    }
+
+    @PostMapping("/start/bulk")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public BulkStartGetDTO postBulkStart(@RequestBody List<String> sessions, HttpServletRequest request) {
+        BulkStartGetDTO result = new BulkStartGetDTO();
+        List<String> local = bulkForwarder.forward(request, sessions, session -> session, BulkStartGetDTO.class,
+                response -> {
+                    result.getStarted().addAll(response.getStarted());
+                    result.getRejected().addAll(response.getRejected());
+                });
+
+        Set<String> started = new HashSet<>(dataService.startTransactions(local));
+        for (String session : local) {
+            if (started.contains(session)) {
+                result.getStarted().add(session);
+            }
+            else {
+                result.getRejected().add(session);
+            }
+        }
+        return result;
     }
 
     @GetMapping("/info")
@@ -42,22 +167,79 @@ public class DataController {
     public List<DataGetDTO> getInfo(@RequestParam("session") String session) {
         List<DataGetDTO> result = new ArrayList<>();
         for (Data data : dataService.getAllData(session)) {
-            result.add(DTOMapper.INSTANCE.convertEntityToDataGetDTO(data));
+            DataGetDTO dataGetDTO = DTOMapper.INSTANCE.convertEntityToDataGetDTO(data);
+            dataGetDTO.setMessage(dataService.renderMessage(data));
+            result.add(dataGetDTO);
         }
         return result;
     }
 
+    /**
+     * Streams the log of the session, or of all sessions on this server without a session, as JSON lines
+     * Compressed with gzip if the client accepts it
+     */
+    @GetMapping("/export")
+    public void getExport(@RequestParam(value = "session", required = false) String session,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType("application/x-ndjson");
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            try (OutputStream out = new GZIPOutputStream(response.getOutputStream(), 8192)) {
+                exportService.export(session, out);
+            }
+        }
+        else {
+            exportService.export(session, response.getOutputStream());
+        }
+    }
+
+    /**
+     * Returns the timeline of the session on this node and, recursively, on all its subordinates
+     * ordered by time, called on the root coordinator it covers the whole transaction
+     */
+    @GetMapping("/timeline")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<TimelineGetDTO> getTimeline(@RequestParam("session") String session) {
+        List<TimelineGetDTO> result = new ArrayList<>();
+        Node node = nodeService.getNode(session);
+        for (Data data : dataService.getAllData(session)) {
+            TimelineGetDTO timelineGetDTO = DTOMapper.INSTANCE.convertEntityToTimelineGetDTO(data);
+            timelineGetDTO.setMessage(dataService.renderMessage(data));
+            timelineGetDTO.setNode((node != null) ? node.getNode() : null);
+            result.add(timelineGetDTO);
+        }
+        if (node != null) {
+            for (String subordinate : node.getSubordinates()) {
+                if (!subordinate.equals(node.getNode())) {
+                    result.addAll(tracingService.fetchTimeline(subordinate, session));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(TimelineGetDTO::getTimeMicros, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return result;
+    }
+
     @PostMapping("/message")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
     public void postMessage(@RequestParam("session") String session,
+                            @RequestHeader(value = OutboxService.TRACE_HEADER, required = false) Long traceId,
+                            @RequestHeader(value = OutboxService.SPAN_HEADER, required = false) Long spanId,
+                            @RequestHeader(value = OutboxService.SEQ_HEADER, required = false) Long seq,
                             @RequestBody MessagePostDTO messagePostDTO) {
-        if (nodeService.isActive(session)) {
-            // handle message
-            Data data = DTOMapper.INSTANCE.convertMessagePostDTOtoEntity(messagePostDTO);
-            data.setSession(session);
-            dataService.receiveMessage(session, data);
+        // the sender passes the sequence number and trace context of the request in headers, the piggybacked
+        // messages carry their own
+        if (seq != null) {
+            messagePostDTO.setSeq(seq);
         }
+        if (traceId != null) {
+            messagePostDTO.setTraceId(traceId);
+            messagePostDTO.setSpanId(spanId);
+        }
+        inboxService.receiveMessage(session, messagePostDTO);
     }
 
     @PostMapping("/inquiry")
@@ -65,8 +247,17 @@ public class DataController {
     @ResponseBody
     public void postInquiry(@RequestParam("session") String session,
                             @RequestBody InquiryPostDTO inquiryPostDTO) {
-        if (nodeService.isActive(session)) {
-            dataService.handleInquiry(session, inquiryPostDTO.getSender(), inquiryPostDTO.getTransId());
-        }
+        inboxService.receiveInquiry(session, inquiryPostDTO);
+    }
+
+    /**
+     * Paxos Commit messages, also answered by servers that take part as acceptor only
+     */
+    @PostMapping("/paxos")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void postPaxos(@RequestParam("session") String session,
+                          @RequestBody PaxosPostDTO paxosPostDTO) {
+        inboxService.receivePaxos(session, paxosPostDTO);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package dds20.controller;
+
+import dds20.service.KeyValueStore;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Key-Value Controller
+ * This class is responsible for handling all REST request that are related to the embedded key-value store.
+ * Writes are staged for the transaction of a session after its setup, reads only see committed values.
+ */
+@RestController
+public class KeyValueController {
+
+    private final KeyValueStore keyValueStore;
+
+    KeyValueController(KeyValueStore keyValueStore) {
+        this.keyValueStore = keyValueStore;
+    }
+
+    @PostMapping("/kv")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public CompletableFuture<Void> postWrites(@RequestParam("session") String session,
+                                              @RequestBody Map<String, String> writes) {
+        return keyValueStore.stage(session, writes);
+    }
+
+    @GetMapping("/kv")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public String getValue(@RequestParam("key") String key) {
+        String value = keyValueStore.get(key);
+        if (value == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No value for key " + key);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,28 @@
+package dds20.controller;
+
+import dds20.service.MetricsService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Metrics Controller
+ * This class is responsible for handling all REST request that are related to the metrics of the server.
+ */
+@RestController
+public class MetricsController {
+
+    private final MetricsService metricsService;
+
+    MetricsController(MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    @GetMapping("/metrics")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Long> getMetrics() {
+        return metricsService.getMetrics();
+    }
+}
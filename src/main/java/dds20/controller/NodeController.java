@@ -1,15 +1,21 @@
 package dds20.controller;
 
 import dds20.entity.Node;
+import dds20.rest.dto.BulkSetupPostDTO;
 import dds20.rest.dto.NodeGetDTO;
 import dds20.rest.dto.SettingsPostDTO;
 import dds20.rest.dto.SetupPostDTO;
 import dds20.rest.mapper.DTOMapper;
 import dds20.service.DataService;
+import dds20.service.KeyValueStore;
 import dds20.service.NodeService;
+import dds20.service.SessionExpiryService;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Node Controller
@@ -21,10 +27,17 @@ public class NodeController {
 
     private final NodeService nodeService;
     private final DataService dataService;
+    private final SessionExpiryService sessionExpiryService;
+    private final BulkForwarder bulkForwarder;
+    private final KeyValueStore keyValueStore;
 
-    NodeController(NodeService nodeService, DataService dataService) {
+    NodeController(NodeService nodeService, DataService dataService, SessionExpiryService sessionExpiryService,
+                   BulkForwarder bulkForwarder, KeyValueStore keyValueStore) {
         this.nodeService = nodeService;
         this.dataService = dataService;
+        this.sessionExpiryService = sessionExpiryService;
+        this.bulkForwarder = bulkForwarder;
+        this.keyValueStore = keyValueStore;
     }
 
     @GetMapping("/status")
@@ -41,13 +54,52 @@ public class NodeController {
     public void postSetup(@RequestParam("session") String session,
                           @RequestBody SetupPostDTO setupPostDTO) {
         dataService.clearData(session);
-        dataService.startSession(session);
+        sessionExpiryService.startSession(session);
 
         Node node = DTOMapper.INSTANCE.convertSetupPostDTOtoEntity(setupPostDTO);
         node.setVote(true);
         node.setActive(true);
         node.setSession(session);
         nodeService.saveNode(node);
+        dataService.watchPeers(node);
+    }
+
+    /**
+     * Answered by every running server, the failure detectors of the other nodes ping it
+     */
+    @GetMapping("/heartbeat")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void getHeartbeat() {
+    }
+
+    @PostMapping("/setup/bulk")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void postBulkSetup(@RequestBody List<BulkSetupPostDTO> bulkSetupPostDTOs, HttpServletRequest request) {
+        List<BulkSetupPostDTO> local = bulkForwarder.forward(request, bulkSetupPostDTOs, BulkSetupPostDTO::getSession,
+                Void.class, response -> {});
+
+        List<Node> nodes = new ArrayList<>();
+        List<String> sessions = new ArrayList<>();
+        for (BulkSetupPostDTO bulkSetupPostDTO : local) {
+            Node node = DTOMapper.INSTANCE.convertSetupPostDTOtoEntity(bulkSetupPostDTO.getSetup());
+            SettingsPostDTO settings = bulkSetupPostDTO.getSettings();
+            node.setActive(settings == null || settings.getActive() == null || settings.getActive());
+            node.setVote(settings == null || settings.getVote() == null || settings.getVote());
+            node.setDieAfter((settings != null && settings.getDieAfter() != null) ? settings.getDieAfter() : "never");
+            node.setSession(bulkSetupPostDTO.getSession());
+            nodes.add(node);
+            sessions.add(bulkSetupPostDTO.getSession());
+        }
+        dataService.setupSessions(nodes);
+        sessionExpiryService.startSessions(sessions);
+        // queued on the shards behind the clearing of the sessions, a later start queues up behind the writes
+        for (BulkSetupPostDTO bulkSetupPostDTO : local) {
+            if (bulkSetupPostDTO.getWrites() != null) {
+                keyValueStore.stage(bulkSetupPostDTO.getSession(), bulkSetupPostDTO.getWrites());
+            }
+        }
     }
 
     @PostMapping("/settings")
@@ -0,0 +1,91 @@
+package dds20.controller;
+
+import dds20.service.OutboxService;
+import dds20.service.ShardRouter;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Shard Routing Filter
+ * If several server instances are configured, this filter forwards every request of a session that is
+ * owned by another instance to that instance and passes its response back. Requests of local sessions
+ * reach the controllers unchanged.
+ */
+@Component
+public class ShardRoutingFilter extends OncePerRequestFilter {
+
+    static final String FORWARDED_HEADER = "X-DDS20-Forwarded";
+
+    private final ShardRouter shardRouter;
+    private final RestTemplate restTemplate;
+
+    ShardRoutingFilter(ShardRouter shardRouter, RestTemplate restTemplate) {
+        this.shardRouter = shardRouter;
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // a forwarded request is always handled locally, so instances with different configurations cannot loop
+        return request.getParameter("session") == null || request.getHeader(FORWARDED_HEADER) != null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String instance = shardRouter.getInstance(request.getParameter("session"));
+        if (instance == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        if (request.getContentType() != null) {
+            headers.set(HttpHeaders.CONTENT_TYPE, request.getContentType());
+        }
+        headers.set(FORWARDED_HEADER, "1");
+        for (String message : new String[] {OutboxService.TRACE_HEADER, OutboxService.SPAN_HEADER,
+                OutboxService.SEQ_HEADER}) {
+            if (request.getHeader(message) != null) {
+                headers.set(message, request.getHeader(message));
+            }
+        }
+        byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+        URI target = URI.create(instance + request.getRequestURI() + "?" + request.getQueryString());
+
+        ResponseEntity<byte[]> forwarded;
+        try {
+            forwarded = restTemplate.exchange(target, HttpMethod.resolve(request.getMethod()),
+                    new HttpEntity<>(body, headers), byte[].class);
+        }
+        catch (HttpStatusCodeException e) {
+            forwarded = ResponseEntity.status(e.getStatusCode()).headers(e.getResponseHeaders())
+                    .body(e.getResponseBodyAsByteArray());
+        }
+
+        response.setStatus(forwarded.getStatusCodeValue());
+        if (forwarded.getHeaders().getFirst(HttpHeaders.RETRY_AFTER) != null) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, forwarded.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        }
+        if (forwarded.getHeaders().getContentType() != null) {
+            response.setContentType(forwarded.getHeaders().getContentType().toString());
+        }
+        if (forwarded.getBody() != null) {
+            response.getOutputStream().write(forwarded.getBody());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package dds20.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Internal Acceptor Representation
+ * This class composes the state of this server as Paxos acceptor for the decision of one transaction,
+ * the instance tells apart the transactions of a session that is set up again.
+ * Every variable will be mapped into a database field with the @Column annotation
+ * - nullable = false -> this cannot be left empty
+ * - unique = true -> this value must be unique across the database -> composes the primary key
+ */
+@Entity
+@Table(name = "ACCEPTOR", indexes = {
+        @Index(name = "acceptor_session_idx", columnList = "session,instance"),
+        @Index(name = "acceptor_updated_idx", columnList = "updated")})
+public class Acceptor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "acceptor_seq")
+    @SequenceGenerator(name = "acceptor_seq", sequenceName = "acceptor_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String session;
+
+    @Column(nullable = false)
+    private Long instance;
+
+    // highest ballot this acceptor promised not to go below
+    @Column
+    private Long promised;
+
+    @Column
+    private Long accepted;
+
+    @Column(columnDefinition = "tinyint")
+    private Opcode value;
+
+    // epoch time in ms of the last request, the state of old transactions expires
+    @Column(nullable = false)
+    private Long updated;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public Long getInstance() {
+        return instance;
+    }
+
+    public void setInstance(Long instance) {
+        this.instance = instance;
+    }
+
+    public Long getPromised() {
+        return promised;
+    }
+
+    public void setPromised(Long promised) {
+        this.promised = promised;
+    }
+
+    public Long getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(Long accepted) {
+        this.accepted = accepted;
+    }
+
+    public Opcode getValue() {
+        return value;
+    }
+
+    public void setValue(Opcode value) {
+        this.value = value;
+    }
+
+    public Long getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(Long updated) {
+        this.updated = updated;
+    }
+}
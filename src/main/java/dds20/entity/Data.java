@@ -2,7 +2,7 @@ package dds20.entity;
 
 import javax.persistence.*;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Internal Data Representation
@@ -12,35 +12,68 @@ import java.util.ArrayList;
  * - unique = true -> this value must be unique across the database -> composes the primary key
  */
 @Entity
-@Table(name = "DATA")
+@Table(name = "DATA", indexes = @Index(name = "data_session_idx", columnList = "session, id"))
 public class Data implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "data_seq")
+    @SequenceGenerator(name = "data_seq", sequenceName = "data_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
     private String session;
 
-    @Column(nullable = false)
-    private String message;
+    @Enumerated(EnumType.ORDINAL)
+    @Column(nullable = false, columnDefinition = "tinyint")
+    private LogType type;
+
+    @Enumerated(EnumType.ORDINAL)
+    @Column(columnDefinition = "tinyint")
+    private Opcode opcode;
+
+    @Enumerated(EnumType.ORDINAL)
+    @Column(columnDefinition = "tinyint")
+    private Event event;
 
     @Column
-    private String node;
+    private Integer peer;
 
     @Column
     private Integer transId;
 
+    @Column(nullable = false)
+    private Boolean isStatus;
+
+    // epoch time in microseconds, receive entries carry the arrival time
     @Column
-    private String coordinator;
+    private Long timeMicros;
 
     @Column
-    private ArrayList<String> subordinates;
+    private Long traceId;
 
-    @Column(nullable = false)
-    private Boolean isStatus;
+    @Column
+    private Long spanId;
+
+    // span of the send entry on the sending node, only set on receive entries
+    @Column
+    private Long parentId;
+
+    // the rest of the chain a linear PREPARE still has to pass, never stored
+    @Transient
+    private List<String> chain;
+
+    // the acceptors and instance of Paxos Commit a PREPARE hands to the subordinates, never stored
+    @Transient
+    private List<String> acceptors;
+
+    @Transient
+    private Long instance;
+
+    // the sender's number of the send a received message came with, a second copy of it is dropped, never stored
+    @Transient
+    private Long seq;
 
     public Long getId() {
         return id;
@@ -50,44 +83,44 @@ public class Data implements Serializable {
         this.id = id;
     }
 
-    public String getMessage() {
-        return message;
+    public LogType getType() {
+        return type;
     }
 
-    public void setMessage(String message) {
-        this.message = message;
+    public void setType(LogType type) {
+        this.type = type;
     }
 
-    public String getNode() {
-        return node;
+    public Opcode getOpcode() {
+        return opcode;
     }
 
-    public void setNode(String node) {
-        this.node = node;
+    public void setOpcode(Opcode opcode) {
+        this.opcode = opcode;
     }
 
-    public Integer getTransId() {
-        return transId;
+    public Event getEvent() {
+        return event;
     }
 
-    public void setTransId(Integer transId) {
-        this.transId = transId;
+    public void setEvent(Event event) {
+        this.event = event;
     }
 
-    public String getCoordinator() {
-        return coordinator;
+    public Integer getPeer() {
+        return peer;
     }
 
-    public void setCoordinator(String coordinator) {
-        this.coordinator = coordinator;
+    public void setPeer(Integer peer) {
+        this.peer = peer;
     }
 
-    public ArrayList<String> getSubordinates() {
-        return subordinates;
+    public Integer getTransId() {
+        return transId;
     }
 
-    public void setSubordinates(ArrayList<String> subordinates) {
-        this.subordinates = subordinates;
+    public void setTransId(Integer transId) {
+        this.transId = transId;
     }
 
     public Boolean getIsStatus() {
@@ -105,4 +138,68 @@ public class Data implements Serializable {
     public void setSession(String session) {
         this.session = session;
     }
+
+    public Long getTimeMicros() {
+        return timeMicros;
+    }
+
+    public void setTimeMicros(Long timeMicros) {
+        this.timeMicros = timeMicros;
+    }
+
+    public Long getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(Long traceId) {
+        this.traceId = traceId;
+    }
+
+    public Long getSpanId() {
+        return spanId;
+    }
+
+    public void setSpanId(Long spanId) {
+        this.spanId = spanId;
+    }
+
+    public Long getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(Long parentId) {
+        this.parentId = parentId;
+    }
+
+    public List<String> getChain() {
+        return chain;
+    }
+
+    public void setChain(List<String> chain) {
+        this.chain = chain;
+    }
+
+    public List<String> getAcceptors() {
+        return acceptors;
+    }
+
+    public void setAcceptors(List<String> acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    public Long getInstance() {
+        return instance;
+    }
+
+    public void setInstance(Long instance) {
+        this.instance = instance;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
 }
@@ -0,0 +1,34 @@
+package dds20.entity;
+
+/**
+ * Status lines of the log
+ * The text is only rendered when the log is requested. Stored by ordinal in the DATA table,
+ * so new values must only be appended.
+ */
+public enum Event {
+    START("Received start command from client"),
+    ALL_YES("Received YES VOTE from all subordinates"),
+    ONE_NO("Received NO VOTE from at least one subordinate"),
+    ALL_ACKS("Received ACK from all subordinates"),
+    NODE_DIED("Node died"),
+    START_RECOVERY("Start recovery"),
+    MISSING_VOTES("Not all votes received"),
+    MISSING_ACKS("Not all acknowledgements received"),
+    NO_RESPONSE_AFTER_VOTE("No response after vote"),
+    NO_RESPONSE_AFTER_INQUIRY("No response after inquiry"),
+    CHECKPOINT("Checkpoint: transaction ended with %s"),
+    PEER_SUSPECTED("Failure of a peer suspected"),
+    PAXOS_ROUND("Asking the acceptors for the decision"),
+    MISSING_ACCEPTS("Decision not accepted by a majority of the acceptors"),
+    DECISION_CHOSEN("Decision accepted by a majority of the acceptors");
+
+    private final String text;
+
+    Event(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,68 @@
+package dds20.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Internal Key-Value Representation
+ * This class composes the values of the embedded key-value store. A row without a session is a committed
+ * value, a row with a session is a write the session's prepared transaction holds until its decision.
+ * Every variable will be mapped into a database field with the @Column annotation
+ * - nullable = false -> this cannot be left empty
+ * - unique = true -> this value must be unique across the database -> composes the primary key
+ */
+@Entity
+@Table(name = "KEY_VALUE", indexes = {
+        @Index(name = "key_value_key_idx", columnList = "kv_key"),
+        @Index(name = "key_value_session_idx", columnList = "session")})
+public class KeyValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "key_value_seq")
+    @SequenceGenerator(name = "key_value_seq", sequenceName = "key_value_seq", allocationSize = 50)
+    private Long id;
+
+    @Column
+    private String session;
+
+    // KEY and VALUE are reserved words in SQL
+    @Column(name = "kv_key", nullable = false)
+    private String key;
+
+    @Column(name = "kv_value")
+    private String value;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+}
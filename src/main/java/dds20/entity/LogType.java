@@ -0,0 +1,15 @@
+package dds20.entity;
+
+/**
+ * Kind of a DATA row
+ * - RECORD -> protocol record (opcode), used for recovery
+ * - SEND / RECEIVE -> message (opcode) sent to / received from a peer
+ * - EVENT -> status line (event)
+ * Stored by ordinal in the DATA table, so new values must only be appended.
+ */
+public enum LogType {
+    RECORD,
+    SEND,
+    RECEIVE,
+    EVENT
+}
@@ -1,5 +1,8 @@
 package dds20.entity;
 
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -13,13 +16,14 @@ import java.util.List;
  * - unique = true -> this value must be unique across the database -> composes the primary key
  */
 @Entity
-@Table(name = "NODE")
+@Table(name = "NODE", indexes = @Index(name = "node_session_idx", columnList = "session"))
 public class Node implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "node_seq")
+    @SequenceGenerator(name = "node_seq", sequenceName = "node_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -49,6 +53,27 @@ public class Node implements Serializable {
     @Column(nullable = false)
     private String coordinator;
 
+    // "central" (default) or "linear", a linear chain passes the PREPARE from one participant to the next
+    @Column
+    private String mode;
+
+    // neighbours in the chain of the linear mode, set when the PREPARE passes through
+    @Column
+    private String predecessor;
+
+    @Column
+    private String successor;
+
+    // Paxos Commit: the acceptors the decision is replicated to, empty for the plain two-phase commit
+    // read with its own select, joined together with the subordinates both lists would repeat each other
+    @ElementCollection(fetch = FetchType.EAGER)
+    @Fetch(FetchMode.SELECT)
+    private List<String> acceptors = new ArrayList<String>();
+
+    // tells apart the decisions of the same session on the acceptors, chosen by the coordinator at start
+    @Column
+    private Long instance;
+
     public Long getId() {
         return id;
     }
@@ -128,4 +153,44 @@ public class Node implements Serializable {
     public void setSession(String session) {
         this.session = session;
     }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public String getPredecessor() {
+        return predecessor;
+    }
+
+    public void setPredecessor(String predecessor) {
+        this.predecessor = predecessor;
+    }
+
+    public String getSuccessor() {
+        return successor;
+    }
+
+    public void setSuccessor(String successor) {
+        this.successor = successor;
+    }
+
+    public List<String> getAcceptors() {
+        return acceptors;
+    }
+
+    public void setAcceptors(List<String> acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    public Long getInstance() {
+        return instance;
+    }
+
+    public void setInstance(Long instance) {
+        this.instance = instance;
+    }
 }
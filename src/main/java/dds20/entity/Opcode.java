@@ -0,0 +1,18 @@
+package dds20.entity;
+
+/**
+ * Protocol messages and log records
+ * Stored by ordinal in the DATA table, so new values must only be appended.
+ */
+public enum Opcode {
+    PREPARE,
+    YES,
+    NO,
+    COMMIT,
+    ABORT,
+    ACK,
+    END,
+    INQUIRY,
+    // one-phase commit: the only subordinate decides itself, also the coordinator's record while it waits
+    ONE_PHASE
+}
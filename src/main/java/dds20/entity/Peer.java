@@ -0,0 +1,43 @@
+package dds20.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Internal Peer Representation
+ * This class composes the dictionary of node URLs. Log entries reference a peer by its integer id
+ * instead of storing the full URL.
+ * Every variable will be mapped into a database field with the @Column annotation
+ * - nullable = false -> this cannot be left empty
+ * - unique = true -> this value must be unique across the database -> composes the primary key
+ */
+@Entity
+@Table(name = "PEER")
+public class Peer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "peer_seq")
+    @SequenceGenerator(name = "peer_seq", sequenceName = "peer_seq", allocationSize = 50)
+    private Integer id;
+
+    @Column(nullable = false, unique = true)
+    private String url;
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+}
@@ -0,0 +1,30 @@
+package dds20.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Overloaded Exception
+ * Thrown when a request is shed by the admission control. It is answered with the given status and a
+ * Retry-After header by the GlobalExceptionAdvice.
+ */
+public class OverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HttpStatus status;
+    private final long retryAfter;
+
+    public OverloadedException(HttpStatus status, long retryAfter, String message) {
+        super(message);
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
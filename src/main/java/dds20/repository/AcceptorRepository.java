@@ -0,0 +1,26 @@
+package dds20.repository;
+
+import dds20.entity.Acceptor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+@Repository("acceptorRepository")
+public interface AcceptorRepository extends JpaRepository<Acceptor, Long> {
+    Acceptor findBySessionAndInstance(String session, Long instance);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Acceptor a where a.session in :sessions")
+    int deleteAllBySessionIn(@Param("sessions") Collection<String> sessions);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Acceptor a where a.updated < :time")
+    int deleteAllByUpdatedBefore(@Param("time") long time);
+}
@@ -1,16 +1,20 @@
 package dds20.repository;
 
 import dds20.entity.Data;
+import dds20.entity.Event;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository("dataRepository")
 public interface DataRepository extends JpaRepository<Data, Long> {
-    Data findTopByOrderByIdDesc();
-
     Data findByTransId(Integer transId);
 
     List<Data> findAllByIsStatus(Boolean status);
@@ -19,8 +23,23 @@ public interface DataRepository extends JpaRepository<Data, Long> {
 
     Data findTopByIsStatusFalseAndSessionOrderByIdDesc(String session);
 
-    List<Data> findAllBySession(String session);
+    Data findTopByIsStatusFalseAndSessionAndIdLessThanOrderByIdDesc(String session, Long id);
+
+    Data findTopBySessionAndEventOrderByIdDesc(String session, Event event);
+
+    List<Data> findAllBySessionOrderByIdAsc(String session);
+
+    List<Data> findAllBySessionAndIdGreaterThanOrderByIdAsc(String session, Long id, Pageable pageable);
+
+    List<Data> findAllByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Data d where d.session in :sessions")
+    int deleteAllBySessionIn(@Param("sessions") Collection<String> sessions);
 
     @Transactional
-    void deleteAllBySession(String session);
+    @Modifying
+    @Query("delete from Data d where d.session = :session and d.id <> :id")
+    int deleteAllBySessionExcept(@Param("session") String session, @Param("id") Long id);
 }
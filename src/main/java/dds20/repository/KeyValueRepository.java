@@ -0,0 +1,33 @@
+package dds20.repository;
+
+import dds20.entity.KeyValue;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+@Repository("keyValueRepository")
+public interface KeyValueRepository extends JpaRepository<KeyValue, Long> {
+
+    @Transactional
+    @Modifying
+    @Query("delete from KeyValue v where v.session is null and v.key in :keys")
+    int deleteCommitted(@Param("keys") Collection<String> keys);
+
+    /**
+     * Turns the writes of the session into committed values
+     */
+    @Transactional
+    @Modifying
+    @Query("update KeyValue v set v.session = null where v.session = :session")
+    int commitSession(@Param("session") String session);
+
+    @Transactional
+    @Modifying
+    @Query("delete from KeyValue v where v.session = :session")
+    int deleteAllBySession(@Param("session") String session);
+}
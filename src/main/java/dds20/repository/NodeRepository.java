@@ -2,14 +2,32 @@ package dds20.repository;
 
 import dds20.entity.Node;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+
 @Repository("nodeRepository")
 public interface NodeRepository extends JpaRepository<Node, Long> {
-    Node findTopByOrderByIdDesc();
     Node findBySession(String session);
 
     @Transactional
-    void deleteBySession(String session);
+    @Modifying
+    @Query(value = "delete from node_subordinates where node_id in (select id from node where session in :sessions)",
+            nativeQuery = true)
+    int deleteSubordinatesBySessionIn(@Param("sessions") Collection<String> sessions);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from node_acceptors where node_id in (select id from node where session in :sessions)",
+            nativeQuery = true)
+    int deleteAcceptorsBySessionIn(@Param("sessions") Collection<String> sessions);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Node n where n.session in :sessions")
+    int deleteAllBySessionIn(@Param("sessions") Collection<String> sessions);
 }
@@ -0,0 +1,10 @@
+package dds20.repository;
+
+import dds20.entity.Peer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository("peerRepository")
+public interface PeerRepository extends JpaRepository<Peer, Integer> {
+    Peer findByUrl(String url);
+}
@@ -0,0 +1,46 @@
+package dds20.rest.dto;
+
+import java.util.Map;
+
+public class BulkSetupPostDTO {
+
+    private String session;
+    private SetupPostDTO setup;
+    private SettingsPostDTO settings;
+    private Map<String, String> writes;
+
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public SetupPostDTO getSetup() {
+        return setup;
+    }
+
+    public void setSetup(SetupPostDTO setup) {
+        this.setup = setup;
+    }
+
+    public SettingsPostDTO getSettings() {
+        return settings;
+    }
+
+    public void setSettings(SettingsPostDTO settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Optional writes of the transaction, staged in the key-value store of the node
+     */
+    public Map<String, String> getWrites() {
+        return writes;
+    }
+
+    public void setWrites(Map<String, String> writes) {
+        this.writes = writes;
+    }
+}
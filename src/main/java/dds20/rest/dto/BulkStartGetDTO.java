@@ -0,0 +1,26 @@
+package dds20.rest.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BulkStartGetDTO {
+
+    private List<String> started = new ArrayList<>();
+    private List<String> rejected = new ArrayList<>();
+
+    public List<String> getStarted() {
+        return started;
+    }
+
+    public void setStarted(List<String> started) {
+        this.started = started;
+    }
+
+    public List<String> getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(List<String> rejected) {
+        this.rejected = rejected;
+    }
+}
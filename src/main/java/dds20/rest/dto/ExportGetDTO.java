@@ -0,0 +1,86 @@
+package dds20.rest.dto;
+
+public class ExportGetDTO {
+
+    private Long id;
+    private String session;
+    private Long timeMicros;
+    private Long traceId;
+    private Long spanId;
+    private Long parentId;
+    private Integer transId;
+    private Boolean isStatus;
+    private String message;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public Long getTimeMicros() {
+        return timeMicros;
+    }
+
+    public void setTimeMicros(Long timeMicros) {
+        this.timeMicros = timeMicros;
+    }
+
+    public Long getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(Long traceId) {
+        this.traceId = traceId;
+    }
+
+    public Long getSpanId() {
+        return spanId;
+    }
+
+    public void setSpanId(Long spanId) {
+        this.spanId = spanId;
+    }
+
+    public Long getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(Long parentId) {
+        this.parentId = parentId;
+    }
+
+    public Integer getTransId() {
+        return transId;
+    }
+
+    public void setTransId(Integer transId) {
+        this.transId = transId;
+    }
+
+    public Boolean getIsStatus() {
+        return isStatus;
+    }
+
+    public void setIsStatus(Boolean isStatus) {
+        this.isStatus = isStatus;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
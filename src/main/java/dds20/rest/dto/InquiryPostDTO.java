@@ -1,9 +1,14 @@
 package dds20.rest.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class InquiryPostDTO {
 
     private int transId;
     private String sender;
+    private Long traceId;
+    private Long spanId;
 
     public int getTransId() { return transId; }
 
@@ -16,4 +21,20 @@ public class InquiryPostDTO {
     public void setSender(String sender) {
         this.sender = sender;
     }
+
+    public Long getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(Long traceId) {
+        this.traceId = traceId;
+    }
+
+    public Long getSpanId() {
+        return spanId;
+    }
+
+    public void setSpanId(Long spanId) {
+        this.spanId = spanId;
+    }
 }
@@ -1,16 +1,27 @@
 package dds20.rest.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.ArrayList;
 import java.util.List;
 
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MessagePostDTO {
 
     private String message;
     private String node;
     private Integer transId;
+    private Long seq;
     private String coordinator;
     private List<String> subordinates;
     private Boolean isStatus;
+    private String session;
+    private List<MessagePostDTO> piggyback;
+    private Long traceId;
+    private Long spanId;
+    private List<String> chain;
+    private List<String> acceptors;
+    private Long instance;
 
     public String getMessage() {
         return message;
@@ -28,9 +39,17 @@ public class MessagePostDTO {
         this.node = node;
     }
 
-    public int getTransId() { return transId; }
+    public Integer getTransId() { return transId; }
+
+    public void setTransId(Integer transId) { this.transId = transId; }
+
+    public Long getSeq() {
+        return seq;
+    }
 
-    public void setTransId(int transId) { this.transId = transId; }
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
 
     public String getCoordinator() {
         return coordinator;
@@ -57,4 +76,59 @@ public class MessagePostDTO {
         this.isStatus = isStatus;
     }
 
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public List<MessagePostDTO> getPiggyback() {
+        return piggyback;
+    }
+
+    public void setPiggyback(List<MessagePostDTO> piggyback) {
+        this.piggyback = piggyback;
+    }
+
+    public Long getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(Long traceId) {
+        this.traceId = traceId;
+    }
+
+    public Long getSpanId() {
+        return spanId;
+    }
+
+    public void setSpanId(Long spanId) {
+        this.spanId = spanId;
+    }
+
+    public List<String> getChain() {
+        return chain;
+    }
+
+    public void setChain(List<String> chain) {
+        this.chain = chain;
+    }
+
+    public List<String> getAcceptors() {
+        return acceptors;
+    }
+
+    public void setAcceptors(List<String> acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    public Long getInstance() {
+        return instance;
+    }
+
+    public void setInstance(Long instance) {
+        this.instance = instance;
+    }
 }
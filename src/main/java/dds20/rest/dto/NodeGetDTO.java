@@ -8,6 +8,7 @@ public class NodeGetDTO {
     private Boolean active;
     private String dieAfter;
     private Boolean vote;
+    private String mode;
 
     public Long getId() {
         return id;
@@ -40,4 +41,12 @@ public class NodeGetDTO {
     public void setVote(Boolean vote) {
         this.vote = vote;
     }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
 }
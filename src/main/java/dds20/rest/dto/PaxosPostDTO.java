@@ -0,0 +1,79 @@
+package dds20.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One message of a Paxos round on the decision of a transaction
+ * The phases are prepare and promise (phase 1), accept and accepted (phase 2), and reject
+ * for a ballot the acceptor already promised to ignore.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PaxosPostDTO {
+
+    private String phase;
+    private String sender;
+    private String acceptor;
+    private Long instance;
+    private Long ballot;
+    private Long accepted;
+    private String value;
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public void setPhase(String phase) {
+        this.phase = phase;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public void setSender(String sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * The acceptor as the proposer addressed it, the answer carries it back
+     */
+    public String getAcceptor() {
+        return acceptor;
+    }
+
+    public void setAcceptor(String acceptor) {
+        this.acceptor = acceptor;
+    }
+
+    public Long getInstance() {
+        return instance;
+    }
+
+    public void setInstance(Long instance) {
+        this.instance = instance;
+    }
+
+    public Long getBallot() {
+        return ballot;
+    }
+
+    public void setBallot(Long ballot) {
+        this.ballot = ballot;
+    }
+
+    public Long getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(Long accepted) {
+        this.accepted = accepted;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,68 @@
+package dds20.rest.dto;
+
+public class ResultGetDTO {
+
+    private String session;
+    private Long handle;
+    private Boolean done;
+    private String outcome;
+    private Long queuedMicros;
+    private Long votingMicros;
+    private Long completionMicros;
+
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public Long getHandle() {
+        return handle;
+    }
+
+    public void setHandle(Long handle) {
+        this.handle = handle;
+    }
+
+    public Boolean getDone() {
+        return done;
+    }
+
+    public void setDone(Boolean done) {
+        this.done = done;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    public Long getQueuedMicros() {
+        return queuedMicros;
+    }
+
+    public void setQueuedMicros(Long queuedMicros) {
+        this.queuedMicros = queuedMicros;
+    }
+
+    public Long getVotingMicros() {
+        return votingMicros;
+    }
+
+    public void setVotingMicros(Long votingMicros) {
+        this.votingMicros = votingMicros;
+    }
+
+    public Long getCompletionMicros() {
+        return completionMicros;
+    }
+
+    public void setCompletionMicros(Long completionMicros) {
+        this.completionMicros = completionMicros;
+    }
+}
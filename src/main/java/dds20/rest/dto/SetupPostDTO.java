@@ -9,6 +9,8 @@ public class SetupPostDTO {
     private Boolean isSubordinate;
     private String coordinator;
     private ArrayList<String> subordinates;
+    private String mode;
+    private ArrayList<String> acceptors;
 
     public String getNode() {
         return node;
@@ -49,4 +51,20 @@ public class SetupPostDTO {
     public void setSubordinates(ArrayList<String> subordinates) {
         this.subordinates = subordinates;
     }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public ArrayList<String> getAcceptors() {
+        return acceptors;
+    }
+
+    public void setAcceptors(ArrayList<String> acceptors) {
+        this.acceptors = acceptors;
+    }
 }
@@ -0,0 +1,32 @@
+package dds20.rest.dto;
+
+public class StartGetDTO {
+
+    private String session;
+    private Long handle;
+    private String result;
+
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public Long getHandle() {
+        return handle;
+    }
+
+    public void setHandle(Long handle) {
+        this.handle = handle;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+}
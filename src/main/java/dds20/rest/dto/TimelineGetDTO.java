@@ -0,0 +1,59 @@
+package dds20.rest.dto;
+
+public class TimelineGetDTO {
+
+    private String node;
+    private Long timeMicros;
+    private Long traceId;
+    private Long spanId;
+    private Long parentId;
+    private String message;
+
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    public Long getTimeMicros() {
+        return timeMicros;
+    }
+
+    public void setTimeMicros(Long timeMicros) {
+        this.timeMicros = timeMicros;
+    }
+
+    public Long getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(Long traceId) {
+        this.traceId = traceId;
+    }
+
+    public Long getSpanId() {
+        return spanId;
+    }
+
+    public void setSpanId(Long spanId) {
+        this.spanId = spanId;
+    }
+
+    public Long getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(Long parentId) {
+        this.parentId = parentId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
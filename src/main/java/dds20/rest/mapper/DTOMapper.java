@@ -2,9 +2,12 @@ package dds20.rest.mapper;
 
 import dds20.entity.Data;
 import dds20.entity.Node;
+import dds20.entity.Opcode;
 import dds20.rest.dto.*;
 import org.mapstruct.*;
 import org.mapstruct.factory.Mappers;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
 
@@ -22,11 +25,11 @@ public interface DTOMapper {
     DTOMapper INSTANCE = Mappers.getMapper(DTOMapper.class);
 
     @Mapping(source = "id", target = "id")
-    @Mapping(source = "message", target = "message")
-    @Mapping(source = "node", target = "node")
+    @Mapping(target = "message", ignore = true)
+    @Mapping(target = "node", ignore = true)
     @Mapping(source = "transId", target = "transId")
-    @Mapping(source = "coordinator", target = "coordinator")
-    @Mapping(source = "subordinates", target = "subordinates")
+    @Mapping(target = "coordinator", ignore = true)
+    @Mapping(target = "subordinates", ignore = true)
     @Mapping(source = "isStatus", target = "isStatus")
     DataGetDTO convertEntityToDataGetDTO(Data data);
 
@@ -43,11 +46,34 @@ public interface DTOMapper {
     @Mapping(source = "subordinates", target = "subordinates")
     Node convertSetupPostDTOtoEntity(SetupPostDTO setupPostDTO);
 
-    @Mapping(source = "message", target = "message")
-    @Mapping(source = "node", target = "node")
+    @Mapping(source = "message", target = "opcode")
+    @Mapping(target = "peer", ignore = true)
+    @Mapping(source = "spanId", target = "parentId")
+    @Mapping(target = "spanId", ignore = true)
+    @Mapping(target = "timeMicros", ignore = true)
     @Mapping(source = "transId", target = "transId")
-    @Mapping(source = "coordinator", target = "coordinator")
-    @Mapping(source = "subordinates", target = "subordinates")
-    @Mapping(source = "isStatus", target = "isStatus")
+    @Mapping(constant = "RECEIVE", target = "type")
+    @Mapping(constant = "true", target = "isStatus")
     Data convertMessagePostDTOtoEntity(MessagePostDTO messagePostDTO);
+
+    @Mapping(target = "node", ignore = true)
+    @Mapping(target = "message", ignore = true)
+    TimelineGetDTO convertEntityToTimelineGetDTO(Data data);
+
+    @Mapping(target = "message", ignore = true)
+    ExportGetDTO convertEntityToExportGetDTO(Data data);
+
+    /**
+     * The message of another node is matched case-insensitively, an unknown one is answered with 400
+     */
+    default Opcode convertStringToOpcode(String message) {
+        if (message != null) {
+            for (Opcode opcode : Opcode.values()) {
+                if (opcode.name().equalsIgnoreCase(message)) {
+                    return opcode;
+                }
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown message " + message);
+    }
 }
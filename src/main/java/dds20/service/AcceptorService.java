@@ -0,0 +1,87 @@
+package dds20.service;
+
+import dds20.entity.Acceptor;
+import dds20.entity.Opcode;
+import dds20.repository.AcceptorRepository;
+import dds20.rest.dto.PaxosPostDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+
+/**
+ * Acceptor Service
+ * This class is the acceptor side of Paxos Commit. It stores the highest ballot it promised and the last
+ * decision it accepted per transaction, and answers the prepare and accept requests of the proposers.
+ * A decision accepted by a majority of the acceptors is chosen and can be learned from any majority.
+ */
+@Service
+public class AcceptorService {
+
+    public static final String PREPARE = "prepare";
+    public static final String PROMISE = "promise";
+    public static final String ACCEPT = "accept";
+    public static final String ACCEPTED = "accepted";
+    public static final String REJECT = "reject";
+
+    private final AcceptorRepository acceptorRepository;
+
+    @Autowired
+    public AcceptorService(@Qualifier("acceptorRepository") AcceptorRepository acceptorRepository) {
+        this.acceptorRepository = acceptorRepository;
+    }
+
+    /**
+     * Returns the answer to the proposer, a reject carries the ballot that was promised instead
+     * Must be called on the session's shard, in a transaction the answer is only sent after
+     */
+    public PaxosPostDTO handle(String session, PaxosPostDTO request) {
+        Acceptor acceptor = acceptorRepository.findBySessionAndInstance(session, request.getInstance());
+        if (acceptor == null) {
+            acceptor = new Acceptor();
+            acceptor.setSession(session);
+            acceptor.setInstance(request.getInstance());
+        }
+        acceptor.setUpdated(System.currentTimeMillis());
+        long promised = (acceptor.getPromised() != null) ? acceptor.getPromised() : -1;
+        long ballot = request.getBallot();
+
+        PaxosPostDTO reply = new PaxosPostDTO();
+        reply.setAcceptor(request.getAcceptor());
+        reply.setInstance(request.getInstance());
+        reply.setBallot(ballot);
+        if (PREPARE.equals(request.getPhase()) && ballot > promised) {
+            acceptor.setPromised(ballot);
+            reply.setPhase(PROMISE);
+            reply.setAccepted(acceptor.getAccepted());
+            reply.setValue((acceptor.getValue() != null) ? acceptor.getValue().name() : null);
+        }
+        else if (ACCEPT.equals(request.getPhase()) && ballot >= promised) {
+            acceptor.setPromised(ballot);
+            acceptor.setAccepted(ballot);
+            acceptor.setValue(Opcode.valueOf(request.getValue()));
+            reply.setPhase(ACCEPTED);
+            reply.setValue(request.getValue());
+        }
+        else {
+            reply.setPhase(REJECT);
+            reply.setBallot(promised);
+            return reply;
+        }
+        acceptorRepository.save(acceptor);
+        return reply;
+    }
+
+    public void clear(Collection<String> sessions) {
+        acceptorRepository.deleteAllBySessionIn(sessions);
+    }
+
+    /**
+     * Removes the state of transactions no proposer asked about since the given time
+     * This server may only be an acceptor of the session, then it never sees the session's setup or END
+     */
+    public int expire(long before) {
+        return acceptorRepository.deleteAllByUpdatedBefore(before);
+    }
+}
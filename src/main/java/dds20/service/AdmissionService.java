@@ -0,0 +1,113 @@
+package dds20.service;
+
+import dds20.exceptions.OverloadedException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission Service
+ * This class bounds the work the server accepts. Messages are only buffered while the session's mailbox
+ * and the global mailbox have room, and only a limited number of transactions may be running at once.
+ * Everything beyond that is shed early with 429 or 503, so the accepted work keeps its latency.
+ */
+@Service
+public class AdmissionService {
+
+    private final MetricsService metricsService;
+
+    private final Map<String, AtomicInteger> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger globalMailbox = new AtomicInteger();
+    private final Set<String> transactions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeTransactions = new AtomicInteger();
+
+    private final int mailboxSize;
+    private final int globalMailboxSize;
+    private final int maxTransactions;
+    private final long retryAfter;
+
+    @Autowired
+    public AdmissionService(MetricsService metricsService,
+                            @Value("${dds20.admission.mailboxSize:1000}") int mailboxSize,
+                            @Value("${dds20.admission.globalMailboxSize:50000}") int globalMailboxSize,
+                            @Value("${dds20.admission.maxTransactions:1000}") int maxTransactions,
+                            @Value("${dds20.admission.retryAfter:1}") long retryAfter) {
+        this.metricsService = metricsService;
+        this.mailboxSize = mailboxSize;
+        this.globalMailboxSize = globalMailboxSize;
+        this.maxTransactions = maxTransactions;
+        this.retryAfter = retryAfter;
+        metricsService.registerGauge("admission.mailbox", globalMailbox::get);
+        metricsService.registerGauge("admission.transactions", activeTransactions::get);
+    }
+
+    /**
+     * Reserves a place in the mailboxes for one message of the session
+     * Throws 503 if the server as a whole is full, 429 if only this session is
+     */
+    public void admitMessage(String session) {
+        if (globalMailbox.incrementAndGet() > globalMailboxSize) {
+            globalMailbox.decrementAndGet();
+            metricsService.increment("admission.rejected.global");
+            throw new OverloadedException(HttpStatus.SERVICE_UNAVAILABLE, retryAfter, "Server mailbox is full");
+        }
+        AtomicInteger mailbox = mailboxes.computeIfAbsent(session, k -> new AtomicInteger());
+        if (mailbox.incrementAndGet() > mailboxSize) {
+            mailbox.decrementAndGet();
+            globalMailbox.decrementAndGet();
+            metricsService.increment("admission.rejected.session");
+            throw new OverloadedException(HttpStatus.TOO_MANY_REQUESTS, retryAfter, "Session mailbox is full");
+        }
+    }
+
+    /**
+     * Frees the place of a message that was taken out of the session's mailbox
+     */
+    public void messageTaken(String session) {
+        AtomicInteger mailbox = mailboxes.get(session);
+        if (mailbox != null) {
+            mailbox.decrementAndGet();
+            globalMailbox.decrementAndGet();
+        }
+    }
+
+    /**
+     * Takes one of the transaction slots for the session, throws 503 if all are in use
+     */
+    public void admitTransaction(String session) {
+        if (transactions.contains(session)) {
+            return;
+        }
+        if (activeTransactions.incrementAndGet() > maxTransactions) {
+            activeTransactions.decrementAndGet();
+            metricsService.increment("admission.rejected.start");
+            throw new OverloadedException(HttpStatus.SERVICE_UNAVAILABLE, retryAfter, "Too many running transactions");
+        }
+        if (!transactions.add(session)) {
+            activeTransactions.decrementAndGet();
+        }
+    }
+
+    public void transactionEnded(String session) {
+        if (transactions.remove(session)) {
+            activeTransactions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Frees everything the session holds, called when its state is removed
+     */
+    public void release(String session) {
+        AtomicInteger mailbox = mailboxes.remove(session);
+        if (mailbox != null) {
+            globalMailbox.addAndGet(-mailbox.get());
+        }
+        transactionEnded(session);
+    }
+}
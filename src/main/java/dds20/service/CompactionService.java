@@ -0,0 +1,120 @@
+package dds20.service;
+
+import dds20.entity.Data;
+import dds20.entity.Event;
+import dds20.entity.LogType;
+import dds20.entity.Opcode;
+import dds20.repository.DataRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compaction Service
+ * This class is responsible for checkpointing finished sessions. Once a session wrote END, its log is
+ * folded into the END record and a single summary entry, so the storage per finished session stays constant.
+ * It is off by default: the sessions expire after dds20.session.expiry anyway, compaction only pays off when
+ * the expiry is much longer than the delay.
+ * Every session is compacted on its shard in its own transaction, so it is ordered with the session's other
+ * work, e.g. a new run or a new setup.
+ */
+@Service
+public class CompactionService {
+
+    private final DataRepository dataRepository;
+    private final AcceptorService acceptorService;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<String, Long> pendingCompactions = new ConcurrentHashMap<>();
+
+    @Value("${dds20.compaction.enabled:false}")
+    private boolean enabled;
+
+    @Value("${dds20.compaction.delay:10000}")
+    private long delay;
+
+    @Autowired
+    public CompactionService(@Qualifier("dataRepository") DataRepository dataRepository,
+                             AcceptorService acceptorService,
+                             ShardRouter shardRouter,
+                             PlatformTransactionManager transactionManager) {
+        this.dataRepository = dataRepository;
+        this.acceptorService = acceptorService;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Regularly hands all sessions whose compaction delay has passed to their shards
+     * A session stays pending until its shard gets to it, so a cancel or a newer END in between still counts
+     */
+    @Scheduled(fixedRate = 1000)
+    public void compactSessions() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> e : pendingCompactions.entrySet()) {
+            String session = e.getKey();
+            Long due = e.getValue();
+            if (due <= now) {
+                shardRouter.getShard(session).execute(() -> {
+                    if (pendingCompactions.remove(session, due)) {
+                        transactionTemplate.execute(status -> {
+                            compactSession(session);
+                            return null;
+                        });
+                    }
+                });
+            }
+        }
+    }
+
+    public void scheduleCompaction(String session) {
+        if (enabled) {
+            pendingCompactions.put(session, System.currentTimeMillis() + delay);
+        }
+    }
+
+    public void cancelCompaction(String session) {
+        pendingCompactions.remove(session);
+    }
+
+    /**
+     * Keeps the END record and replaces everything before it with one summary entry
+     * The coordinator's ACKs are all in, so no participant asks the acceptors of this server anymore
+     * A session that started a new run after the END is left alone, its START is logged after the END
+     */
+    private void compactSession(String session) {
+        Data end = dataRepository.findTopByIsStatusFalseAndSessionOrderByIdDesc(session);
+        if (end == null || end.getOpcode() != Opcode.END) {
+            return;
+        }
+        if (!dataRepository.findAllBySessionAndIdGreaterThanOrderByIdAsc(session, end.getId(), PageRequest.of(0, 1))
+                .isEmpty()) {
+            return;
+        }
+        Data decision = dataRepository.findTopByIsStatusFalseAndSessionAndIdLessThanOrderByIdDesc(session, end.getId());
+        Opcode outcome = (decision != null) ? decision.getOpcode() : Opcode.END;
+
+        dataRepository.deleteAllBySessionExcept(session, end.getId());
+        acceptorService.clear(Collections.singletonList(session));
+
+        Data summary = new Data();
+        summary.setIsStatus(true);
+        summary.setType(LogType.EVENT);
+        summary.setEvent(Event.CHECKPOINT);
+        summary.setOpcode(outcome);
+        summary.setSession(session);
+        // the checkpoint stands for the log up to END, so it sorts with END on the session's timeline
+        summary.setTimeMicros(end.getTimeMicros());
+        dataRepository.save(summary);
+    }
+}
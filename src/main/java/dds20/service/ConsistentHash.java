@@ -0,0 +1,49 @@
+package dds20.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Consistent Hash Ring
+ * Every member is placed on the ring several times (virtual nodes). A key belongs to the first member
+ * clockwise of its hash, so adding or removing a member only moves the keys of that member.
+ */
+public class ConsistentHash<T> {
+
+    private final TreeMap<Integer, T> ring = new TreeMap<>();
+
+    public ConsistentHash(Collection<T> members, Function<T, String> name, int virtualNodes) {
+        for (T member : members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(name.apply(member) + "#" + i), member);
+            }
+        }
+    }
+
+    public T get(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Integer, T> entry = ring.ceilingEntry(hash(key));
+        return (entry != null) ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * FNV-1a followed by the murmur3 finalizer, so similar session names spread over the whole ring
+     */
+    static int hash(String key) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
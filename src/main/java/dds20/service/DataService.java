@@ -1,166 +1,483 @@
 package dds20.service;
 
 import dds20.entity.Data;
+import dds20.entity.Event;
+import dds20.entity.LogType;
 import dds20.entity.Node;
+import dds20.entity.Opcode;
+import dds20.exceptions.OverloadedException;
 import dds20.repository.DataRepository;
 import dds20.repository.NodeRepository;
+import dds20.rest.dto.InquiryPostDTO;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static dds20.entity.Opcode.*;
 
 /**
  * Data Service
  * This class is the "worker" and responsible for all functionality related to the data
  * (e.g., it creates, modifies, deletes, finds). The result will be passed back to the caller.
+ * The protocol state of a session lives on the shard the session is hashed onto, and all protocol
+ * steps of a session run on that shard's thread.
  */
 @Service
 @Transactional
 public class DataService {
 
     private final NodeService nodeService;
+    private final CompactionService compactionService;
+    private final PeerService peerService;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
 
     private final DataRepository dataRepository;
     private final NodeRepository nodeRepository;
 
-    private static final String PREPARE = "PREPARE";
-    private static final String COMMIT = "COMMIT";
-    private static final String ABORT = "ABORT";
-    private static final String YES = "YES";
-    private static final String NO = "NO";
-    private static final String ACK = "ACK";
-    private static final String END = "END";
-
     private static final int respawnTimer = 3000;
     private static final int ackTimer = 8000;
     private static final int voteTimer = 8000;
     private static final int responseTimer = 8000;
 
-    private final Map<String, List<Data>> bufferMessages = new HashMap<>();
-    private final Map<String, Map<String, String>> votes = new HashMap<>();
-    private final Map<String, List<String>> acksNeeded = new HashMap<>();
-    private final Map<String, List<String>> acksReceived = new HashMap<>();
-    private final Map<String, Timer> timer = new HashMap<>();
-    private final Map<String, Timer> sessionTimer = new HashMap<>();
-
-
-    @Autowired
-    private final RestTemplate restTemplate;
+    private static final String LINEAR = "linear";
+
+    // the mailbox metrics are counted for every message, so their names are built once
+    private static final Map<Opcode, String> TAKEN_METRICS = mailboxMetrics(".taken");
+    private static final Map<Opcode, String> WAIT_METRICS = mailboxMetrics(".waitMicros");
+
+    private final Transport transport;
+    private final MetricsService metricsService;
+    private final AdmissionService admissionService;
+    private final TracingService tracingService;
+    private final DecisionCache decisionCache;
+    private final FailureDetector failureDetector;
+    private final AcceptorService acceptorService;
+    private final Participant participant;
+    private final ResultService resultService;
+    private final boolean onePhaseEnabled;
+    private final boolean epochEnabled;
+    private final long mailboxMaxDelay;
+    // numbers every send, it starts at the current time in microseconds, so a restarted node does not reuse
+    // the numbers its peers already received from it
+    private final AtomicLong sequence;
 
     @Autowired
     public DataService(NodeService nodeService,
+                       CompactionService compactionService,
+                       PeerService peerService,
+                       ShardRouter shardRouter,
+                       PlatformTransactionManager transactionManager,
                        @Qualifier("dataRepository") DataRepository dataRepository,
                        @Qualifier("nodeRepository") NodeRepository nodeRepository,
-                       RestTemplate restTemplate) {
+                       Transport transport,
+                       MetricsService metricsService,
+                       AdmissionService admissionService,
+                       TracingService tracingService,
+                       DecisionCache decisionCache,
+                       FailureDetector failureDetector,
+                       AcceptorService acceptorService,
+                       Participant participant,
+                       ResultService resultService,
+                       @Value("${dds20.onePhase.enabled:true}") boolean onePhaseEnabled,
+                       @Value("${dds20.epoch.enabled:false}") boolean epochEnabled,
+                       @Value("${dds20.mailbox.maxDelay:2000}") long mailboxMaxDelay) {
         this.nodeService = nodeService;
+        this.compactionService = compactionService;
+        this.peerService = peerService;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.dataRepository = dataRepository;
         this.nodeRepository = nodeRepository;
-        this.restTemplate = restTemplate;
+        this.transport = transport;
+        this.metricsService = metricsService;
+        this.admissionService = admissionService;
+        this.tracingService = tracingService;
+        this.decisionCache = decisionCache;
+        this.failureDetector = failureDetector;
+        this.acceptorService = acceptorService;
+        this.participant = participant;
+        this.resultService = resultService;
+        this.onePhaseEnabled = onePhaseEnabled;
+        this.epochEnabled = epochEnabled;
+        this.mailboxMaxDelay = mailboxMaxDelay * 1000;
+        this.sequence = new AtomicLong(tracingService.now());
+
+        for (Shard shard : shardRouter.getShards()) {
+            shard.scheduleAtFixedRate(() -> handleMessage(shard), 500);
+            shard.scheduleAtFixedRate(() -> allVotes(shard), 1000);
+            shard.scheduleAtFixedRate(() -> allAcks(shard), 1000);
+            if (failureDetector.isEnabled()) {
+                shard.scheduleAtFixedRate(() -> checkSuspects(shard), 500);
+            }
+        }
+        for (String session : participant.getPrepared()) {
+            onShard(session, () -> recoverParticipant(session));
+        }
+    }
+
+    /**
+     * Hands a participant that was prepared before a restart the outcome from the log, or recovers the session
+     * if the log is still in doubt
+     */
+    private void recoverParticipant(String session) {
+        Opcode outcome = getOutcome(session);
+        if (getNode(session) == null || outcome == ABORT) {
+            participant.abort(session);
+        }
+        else if (outcome == COMMIT) {
+            participant.commit(session);
+        }
+        else {
+            startRecovery(session);
+        }
+    }
+
+    private static Map<Opcode, String> mailboxMetrics(String suffix) {
+        Map<Opcode, String> metrics = new EnumMap<>(Opcode.class);
+        for (Opcode opcode : Opcode.values()) {
+            metrics.put(opcode, "mailbox." + opcode.name().toLowerCase() + suffix);
+        }
+        return metrics;
     }
 
     /**
      * Regularly checks if all votes arrived
-     * If yes and all votes are YES, send out COMMITs
-     * If yes and one vote is NO, send out ABORTs
-     */
-    @Scheduled(fixedRate = 1000)
-    public void allVotes() {
-        for (Map.Entry<String, Map<String, String>> voteMap : votes.entrySet()) {
-            Node node = getNode(voteMap.getKey());
-            Map<String, String> votes = voteMap.getValue();
-            if (node != null && node.getActive() && node.getIsCoordinator()) {
-                // if all votes arrived
-                if (votes.keySet().size() == node.getSubordinates().size()) {
-                    timer.get(node.getSession()).cancel();
-                    initAcks(node.getSession());
-                    // if at least one of the votes is NO
-                    if (!votes.containsValue(NO)) {
-                        votes.clear();
-                        writeLog(node.getSession(), "Received YES VOTE from all subordinates");
-                        writeRecord(node.getSession(), COMMIT);
+     * Every session is checked in its own transaction, so the persistence context stays small
+     */
+    private void allVotes(Shard shard) {
+        forEachSession(shard, state -> state.getVotes() != null && !state.getVotes().isEmpty(), this::checkVotes);
+    }
 
-                        if (node.getDieAfter().equals("commit/abort")) {
-                            die(node.getSession());
-                            return;
-                        }
+    /**
+     * Runs the task for every session of the shard the filter accepts
+     * Every session gets a transaction of its own, also in epoch mode: the messages of a session leave when
+     * it is handled, so a failing session must not roll back the log of the others that already sent theirs
+     */
+    private void forEachSession(Shard shard, Predicate<SessionState> filter, Consumer<SessionState> task) {
+        List<SessionState> batch = new ArrayList<>();
+        for (SessionState state : shard.getSessions()) {
+            if (filter.test(state)) {
+                batch.add(state);
+            }
+        }
+        forEachSession(batch, task);
+    }
 
-                        for (String s : node.getSubordinates()) {
-                            writeSendLog(node.getSession(), COMMIT, s);
-                            sendMessage(node.getSession(), s, COMMIT, 1);
-                            acksNeeded.get(node.getSession()).add(s);
-                        }
-                        if (node.getDieAfter().equals("result")) {
-                            die(node.getSession());
-                            return;
-                        }
-                        startTimer(node.getSession(), ackTimer, "Not all acknowledgements received");
+    private void forEachSession(List<SessionState> batch, Consumer<SessionState> task) {
+        for (SessionState state : batch) {
+            inTransaction(() -> task.accept(state));
+        }
+    }
+
+    /**
+     * Decides as soon as the votes allow it
+     * If all votes arrived and all are YES, send out COMMITs
+     * If one vote is NO, send out ABORTs at once, also to the subordinates that have not voted yet
+     * An intermediate coordinator instead passes the aggregated vote of its subtree upwards
+     */
+    private void checkVotes(SessionState state) {
+        Map<String, Opcode> votes = state.getVotes();
+        if (votes == null) {
+            return;
+        }
+        Node node = getNode(state.getSession());
+        if (node != null && node.getActive() && node.getIsCoordinator()) {
+            // if all votes arrived or one of them is NO
+            if (votes.keySet().size() == node.getSubordinates().size() || votes.containsValue(NO)) {
+                state.cancelTimer();
+                state.initAcks();
+                if (isIntermediate(node)) {
+                    sendSubtreeVote(node, state, votes);
+                    return;
+                }
+                if (isOnePhase(node.getSession())) {
+                    finishOnePhase(node, votes);
+                    return;
+                }
+                // if at least one of the votes is NO
+                if (!votes.containsValue(NO)) {
+                    votes.clear();
+                    writeEvent(node.getSession(), Event.ALL_YES);
+                    if (isPaxos(node)) {
+                        proposeCommit(node, state);
+                        return;
+                    }
+                    writeRecord(node.getSession(), COMMIT);
+
+                    if (node.getDieAfter().equals("commit/abort")) {
+                        die(node.getSession());
+                        return;
+                    }
+
+                    for (String s : node.getSubordinates()) {
+                        writeSendLog(node.getSession(), COMMIT, s);
+                        sendMessage(node.getSession(), s, COMMIT, 1);
+                        state.getAcksNeeded().add(s);
+                    }
+                    if (node.getDieAfter().equals("result")) {
+                        die(node.getSession());
+                        return;
+                    }
+                    startTimer(node.getSession(), ackTimer, Event.MISSING_ACKS);
+                }
+                else {
+                    writeEvent(node.getSession(), Event.ONE_NO);
+                    writeRecord(node.getSession(), ABORT);
+
+                    if (node.getDieAfter().equals("commit/abort")) {
+                        die(node.getSession());
+                        votes.clear();
+                        return;
+                    }
+
+                    int c = sendAbort(node, state, votes);
+                    votes.clear();
+                    if (node.getDieAfter().equals("result")) {
+                        die(node.getSession());
+                        return;
+                    }
+                    // if no acks are necessary to write END
+                    if (c == 0) {
+                        writeRecord(node.getSession(), END);
                     }
                     else {
-                        writeLog(node.getSession(), "Received NO VOTE from at least one subordinate");
-                        writeRecord(node.getSession(), ABORT);
+                        startTimer(node.getSession(), ackTimer, Event.MISSING_ACKS);
+                    }
+                }
+            }
+        }
+    }
 
-                        if (node.getDieAfter().equals("commit/abort")) {
-                            die(node.getSession());
-                            voteMap.getValue().clear();
-                            return;
-                        }
+    /**
+     * Paxos Commit: the COMMIT is only recorded and sent out once a majority of the acceptors accepted it,
+     * so the subordinates can learn it from the acceptors while the coordinator is down
+     * The coordinator's round has ballot 0 and skips phase 1, an ABORT is not replicated at all
+     * because no other proposer ever proposes a COMMIT of its own
+     */
+    private void proposeCommit(Node node, SessionState state) {
+        state.startRound(0, COMMIT);
+        sendPaxos(node, AcceptorService.ACCEPT, 0, COMMIT);
 
-                        int c = 0;
-                        for (Map.Entry<String, String> vote : votes.entrySet()) {
-                            if (vote.getValue() == null || vote.getValue().equalsIgnoreCase(YES)) {
-                                writeSendLog(node.getSession(), ABORT, vote.getKey());
-                                sendMessage(node.getSession(), vote.getKey(), ABORT, 1);
-                                acksNeeded.get(node.getSession()).add(vote.getKey());
-                                c++;
-                            }
-                        }
-                        voteMap.getValue().clear();
-                        if (node.getDieAfter().equals("result")) {
-                            die(node.getSession());
-                            return;
-                        }
-                        // if no acks are necessary to write END
-                        if (c == 0) {
-                            writeRecord(node.getSession(), END);
-                        }
+        if (node.getDieAfter().equals("commit/abort")) {
+            die(node.getSession());
+            return;
+        }
+        startTimer(node.getSession(), responseTimer, Event.MISSING_ACCEPTS);
+    }
+
+    /**
+     * Starts a Paxos round above every ballot seen so far, the proposal only holds if none of the
+     * acceptors that promise accepted a decision before
+     */
+    private void startPaxosRound(Node node, Opcode proposal) {
+        SessionState state = state(node.getSession());
+        long round = (state.getHighestBallot() >>> 32) + 1;
+        // the lower half tells the proposers apart, so two of them never use the same ballot
+        long ballot = (round << 32) | (node.getNode().hashCode() & 0xffffffffL);
+        state.startRound(ballot, proposal);
+        writeEvent(node.getSession(), Event.PAXOS_ROUND);
+        metricsService.increment("paxos.rounds");
+        sendPaxos(node, AcceptorService.PREPARE, ballot, null);
+    }
+
+    private void sendPaxos(Node node, String phase, long ballot, Opcode value) {
+        for (String acceptor : node.getAcceptors()) {
+            PaxosPostDTO message = new PaxosPostDTO();
+            message.setPhase(phase);
+            message.setSender(node.getNode());
+            message.setAcceptor(acceptor);
+            message.setInstance(node.getInstance());
+            message.setBallot(ballot);
+            message.setValue((value != null) ? value.name() : null);
+            transport.sendPaxos(acceptor, node.getSession(), message);
+        }
+    }
+
+    /**
+     * Handles the requests to this server as acceptor and the answers to the rounds of the session's node
+     */
+    public void handlePaxos(String session, PaxosPostDTO message) {
+        onShard(session, () -> doHandlePaxos(session, message));
+    }
+
+    private void doHandlePaxos(String session, PaxosPostDTO message) {
+        Node node = getNode(session);
+        // a crashed node takes its acceptor down with it
+        if (node != null && !node.getActive()) {
+            return;
+        }
+        String phase = message.getPhase();
+        if (AcceptorService.PREPARE.equals(phase) || AcceptorService.ACCEPT.equals(phase)) {
+            // a promise or an accept only counts once it is stored, so the reply waits for the commit
+            PaxosPostDTO reply = acceptorService.handle(session, message);
+            afterCommit(() -> transport.sendPaxos(message.getSender(), session, reply));
+        }
+        else if (node != null && message.getInstance().equals(node.getInstance())) {
+            handlePaxosAnswer(node, message);
+        }
+    }
+
+    private void handlePaxosAnswer(Node node, PaxosPostDTO message) {
+        SessionState state = state(node.getSession());
+        if (AcceptorService.REJECT.equals(message.getPhase())) {
+            // the next round, started by the timer, goes above it
+            state.setHighestBallot(message.getBallot());
+            return;
+        }
+        if (state.getBallot() == null || state.getBallot().longValue() != message.getBallot()) {
+            return;
+        }
+        Data lastData = getLastDataEntry(node.getSession());
+        if (lastData != null && (lastData.getOpcode() == COMMIT || lastData.getOpcode() == ABORT
+                || lastData.getOpcode() == END)) {
+            return;
+        }
+        int majority = node.getAcceptors().size() / 2 + 1;
+        if (AcceptorService.PROMISE.equals(message.getPhase())) {
+            if (state.getPromises().size() >= majority) {
+                return;
+            }
+            state.getPromises().put(message.getAcceptor(), message);
+            if (state.getPromises().size() == majority) {
+                // a decision accepted before may already be chosen, the one of the highest ballot is kept
+                PaxosPostDTO highest = null;
+                for (PaxosPostDTO promise : state.getPromises().values()) {
+                    if (promise.getAccepted() != null && (highest == null || promise.getAccepted() > highest.getAccepted())) {
+                        highest = promise;
                     }
                 }
+                if (highest != null) {
+                    state.setProposal(Opcode.valueOf(highest.getValue()));
+                }
+                sendPaxos(node, AcceptorService.ACCEPT, state.getBallot(), state.getProposal());
+            }
+        }
+        else if (AcceptorService.ACCEPTED.equals(message.getPhase())) {
+            state.getAccepts().add(message.getAcceptor());
+            if (state.getAccepts().size() == majority) {
+                decideChosen(node, state.getProposal());
+            }
+        }
+    }
+
+    /**
+     * The decision is chosen, the coordinator records and sends it out like after the votes
+     * and a subordinate takes it like a decision from its coordinator
+     */
+    private void decideChosen(Node node, Opcode decision) {
+        String session = node.getSession();
+        writeEvent(session, Event.DECISION_CHOSEN);
+        metricsService.increment("paxos.chosen");
+        if (node.getIsSubordinate()) {
+            if (decision == COMMIT) {
+                handleCommit(node);
+            }
+            else {
+                handleAbort(node);
             }
+            return;
+        }
+        SessionState state = state(session);
+        state.cancelTimer();
+        state.initAcks();
+        writeRecord(session, decision);
+        for (String s : node.getSubordinates()) {
+            writeSendLog(session, decision, s);
+            sendMessage(session, s, decision, 1);
+            state.getAcksNeeded().add(s);
+        }
+        if (node.getDieAfter().equals("result")) {
+            die(session);
+            return;
         }
+        startTimer(session, ackTimer, Event.MISSING_ACKS);
+    }
+
+    private boolean isOnePhase(String session) {
+        Data lastData = getLastDataEntry(session);
+        return lastData != null && lastData.getOpcode() == ONE_PHASE;
+    }
+
+    /**
+     * The single subordinate already decided, its vote is the outcome and nothing is left to send
+     */
+    private void finishOnePhase(Node node, Map<String, Opcode> votes) {
+        boolean commit = !votes.containsValue(NO);
+        votes.clear();
+        writeEvent(node.getSession(), commit ? Event.ALL_YES : Event.ONE_NO);
+        writeRecord(node.getSession(), commit ? COMMIT : ABORT);
+
+        if (node.getDieAfter().equals("commit/abort")) {
+            // the recovery sends the decision again and collects the ACK like after a two-phase commit
+            die(node.getSession());
+            return;
+        }
+        writeRecord(node.getSession(), END);
+    }
+
+    /**
+     * Sends ABORT to every subordinate that did not vote NO, including those whose vote is still missing
+     * Returns the number of acknowledgements needed
+     */
+    private int sendAbort(Node node, SessionState state, Map<String, Opcode> votes) {
+        int c = 0;
+        for (String s : node.getSubordinates()) {
+            if (votes.get(s) != NO) {
+                writeSendLog(node.getSession(), ABORT, s);
+                sendMessage(node.getSession(), s, ABORT, 1);
+                state.getAcksNeeded().add(s);
+                c++;
+            }
+        }
+        return c;
     }
 
     /**
      * Regularly checks if all acknowledgements arrived
      * If yes, writes END
      */
-    @Scheduled(fixedRate = 1000)
-    public void allAcks() {
-        for (Map.Entry<String, List<String>> e : acksNeeded.entrySet()) {
-            Node node = getNode(e.getKey());
-            if (node != null && acksReceived.containsKey(node.getSession())) {
-                if (node.getActive() && node.getIsCoordinator()) {
-                    Data lastData = getLastDataEntry(node.getSession());
-                    if (lastData != null) {
-                        String lastMsg = lastData.getMessage();
-                        if (lastMsg != null && (lastMsg.equalsIgnoreCase(COMMIT) || lastMsg.equalsIgnoreCase(ABORT))) {
-                            if (acksReceived.get(node.getSession()).size() > 0
-                                    && acksReceived.get(node.getSession()).size() == e.getValue().size()) {
-                                timer.get(node.getSession()).cancel();
-                                writeLog(node.getSession(), "Received ACK from all subordinates");
-                                writeRecord(node.getSession(), END);
-                                acksReceived.get(node.getSession()).clear();
-                                acksNeeded.get(node.getSession()).clear();
-                            }
+    private void allAcks(Shard shard) {
+        forEachSession(shard, state -> {
+            Set<String> acksNeeded = state.getAcksNeeded();
+            Set<String> acksReceived = state.getAcksReceived();
+            return acksNeeded != null && acksReceived != null && !acksNeeded.isEmpty()
+                    && acksReceived.containsAll(acksNeeded);
+        }, this::checkAcks);
+    }
+
+    private void checkAcks(SessionState state) {
+        Node node = getNode(state.getSession());
+        if (node != null) {
+            if (node.getActive() && node.getIsCoordinator()) {
+                Data lastData = getLastDataEntry(node.getSession());
+                if (lastData != null) {
+                    Opcode lastMsg = lastData.getOpcode();
+                    if (lastMsg == COMMIT || lastMsg == ABORT) {
+                        state.cancelTimer();
+                        writeEvent(node.getSession(), Event.ALL_ACKS);
+                        writeRecord(node.getSession(), END);
+                        state.getAcksReceived().clear();
+                        state.getAcksNeeded().clear();
+                        // an intermediate coordinator acknowledges the decision once its subtree did
+                        if (state.isAckParent()) {
+                            state.setAckParent(false);
+                            writeSendLog(node.getSession(), ACK, node.getCoordinator());
+                            sendMessage(node.getSession(), node.getCoordinator(), ACK, 1);
                         }
                     }
                 }
@@ -170,106 +487,357 @@ public class DataService {
 
     /**
      * Regularly processes arrived messages from a buffer
-     * Calls the respective message handler
-     */
-    @Scheduled(fixedRate = 500)
-    public void handleMessage() {
-        for (Map.Entry<String, List<Data>> messages : bufferMessages.entrySet()) {
-            if (messages.getValue().size() > 0) {
-                Node node = getNode(messages.getKey());
-                if (node != null && node.getActive()) {
-                    Data data = messages.getValue().remove(0);
-                    writeReceiveLog(node.getSession(), data.getMessage(), data.getNode());
-
-                    switch (data.getMessage().toUpperCase()) {
-                        case PREPARE:
-                            handlePrepare(node);
-                            break;
-                        case YES:
-                        case NO:
-                            handleVote(node, data);
-                            break;
-                        case COMMIT:
-                            handleCommit(node);
-                            break;
-                        case ABORT:
-                            handleAbort(node);
-                            break;
-                        case ACK:
-                            handleAck(node, data);
-                            break;
+     * Calls the respective message handler, within a tick the sessions whose next message finishes a
+     * transaction are handled first
+     */
+    private void handleMessage(Shard shard) {
+        long now = tracingService.now();
+        List<SessionState> urgent = new ArrayList<>();
+        List<SessionState> newWork = new ArrayList<>();
+        for (SessionState state : shard.getSessions()) {
+            Mailbox mailbox = state.getMessages();
+            if (!mailbox.isEmpty()) {
+                (mailbox.isUrgent(now, mailboxMaxDelay) ? urgent : newWork).add(state);
+            }
+        }
+        urgent.addAll(newWork);
+        forEachSession(urgent, this::handleMessage);
+    }
+
+    private void handleMessage(SessionState state) {
+        Node node = getNode(state.getSession());
+        if (node != null && node.getActive()) {
+            long now = tracingService.now();
+            Data data = state.getMessages().poll(now, mailboxMaxDelay);
+            admissionService.messageTaken(state.getSession());
+            metricsService.increment(TAKEN_METRICS.get(data.getOpcode()));
+            metricsService.add(WAIT_METRICS.get(data.getOpcode()), now - data.getTimeMicros());
+            if (!state.markReceived(data)) {
+                handleDuplicate(node, data);
+                return;
+            }
+            if (data.getOpcode() == PREPARE || data.getOpcode() == ONE_PHASE) {
+                state.startRun();
+            }
+            // a decision resent by a recovery or an inquiry is only acknowledged again, its receive is not logged
+            else if (state.isDecided(data)) {
+                handleDuplicate(node, data);
+                return;
+            }
+            // a PREPARE opens the trace of a new transaction on this node
+            if (data.getTraceId() != null && (state.getTraceId() == null || data.getOpcode() == PREPARE
+                    || data.getOpcode() == ONE_PHASE)) {
+                state.setTraceId(data.getTraceId());
+            }
+            // the buffered message already is the receive log entry
+            saveData(data);
+
+            switch (data.getOpcode()) {
+                case PREPARE:
+                    if (data.getAcceptors() != null) {
+                        // the coordinator decides with Paxos Commit, in doubt this node asks its acceptors
+                        node.setAcceptors(new ArrayList<>(data.getAcceptors()));
+                        node.setInstance(data.getInstance());
+                        nodeService.saveNode(node);
                     }
-                }
+                    // only a PREPARE of the linear mode carries the rest of the chain
+                    if (data.getChain() != null) {
+                        handleChainPrepare(node, data);
+                    }
+                    else {
+                        handlePrepare(node);
+                    }
+                    break;
+                case ONE_PHASE:
+                    state.setOnePhase(true);
+                    if (!resendOnePhaseOutcome(node)) {
+                        handlePrepare(node);
+                    }
+                    break;
+                case YES:
+                case NO:
+                    handleVote(node, data);
+                    break;
+                case COMMIT:
+                case ABORT:
+                    // remembered once the decision is in the log, a rolled back one is taken again
+                    Integer peer = data.getPeer();
+                    Opcode decision = data.getOpcode();
+                    afterCommit(() -> state.markDecided(peer, decision));
+                    if (isLinear(node)) {
+                        handleChainDecision(node, data.getOpcode());
+                    }
+                    else if (data.getOpcode() == COMMIT) {
+                        handleCommit(node);
+                    }
+                    else {
+                        handleAbort(node);
+                    }
+                    break;
+                case ACK:
+                    handleAck(node, data);
+                    break;
             }
         }
     }
 
     public void clearData(String session) {
-        dataRepository.deleteAllBySession(session);
-        dataRepository.flush();
-        bufferMessages.remove(session);
-        votes.remove(session);
-        acksNeeded.remove(session);
-        acksReceived.remove(session);
-        if (timer.containsKey(session)) {
-            timer.get(session).cancel();
-            timer.remove(session);
+        clearData(Collections.singletonList(session));
+    }
+
+    /**
+     * Removes the data, node and in-memory state of all given sessions with set-based deletes
+     */
+    public void clearData(Collection<String> sessions) {
+        // cancelled first, so a compaction that has not run yet cannot log a checkpoint into the new setup
+        for (String session : sessions) {
+            compactionService.cancelCompaction(session);
+        }
+        dataRepository.deleteAllBySessionIn(sessions);
+        acceptorService.clear(sessions);
+        for (String session : sessions) {
+            Shard shard = shardRouter.getShard(session);
+            shard.execute(() -> {
+                // the writes of the new setup are staged on the shard as well, so they queue up behind this
+                participant.abort(session);
+                shard.removeSession(session);
+                admissionService.release(session);
+                decisionCache.invalidate(session);
+                resultService.remove(session);
+            });
         }
-        nodeService.clearNode(session);
+        nodeService.clearNodes(sessions);
     }
 
-    public void startSession(String session) {
-        if (sessionTimer.containsKey(session)) {
-            sessionTimer.get(session).cancel();
+    /**
+     * Replaces the nodes of many sessions in one transaction
+     */
+    public void setupSessions(List<Node> nodes) {
+        List<String> sessions = new ArrayList<>();
+        for (Node node : nodes) {
+            sessions.add(node.getSession());
         }
-        else {
-            sessionTimer.put(session, new Timer());
+        clearData(sessions);
+        nodeService.saveNodes(nodes);
+        for (Node node : nodes) {
+            watchPeers(node);
         }
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
-                clearData(session);
+    }
+
+    /**
+     * Lets the failure detector watch the coordinator and the subordinates of the node
+     */
+    public void watchPeers(Node node) {
+        if (!failureDetector.isEnabled()) {
+            return;
+        }
+        List<String> peers = new ArrayList<>(node.getSubordinates());
+        peers.add(node.getCoordinator());
+        if (node.getPredecessor() != null) {
+            peers.add(node.getPredecessor());
+        }
+        if (node.getSuccessor() != null) {
+            peers.add(node.getSuccessor());
+        }
+        peers.remove(node.getNode());
+        failureDetector.monitor(peers);
+    }
+
+    /**
+     * Writes an event if one of the subordinates is suspected to have failed
+     * Asking them would only end in the vote timer, so the transaction is aborted right away
+     */
+    private boolean isSubordinateSuspected(Node node) {
+        if (failureDetector.findSuspected(node.getSubordinates()) == null) {
+            return false;
+        }
+        writeEvent(node.getSession(), Event.PEER_SUSPECTED);
+        metricsService.increment("failureDetector.aborts");
+        return true;
+    }
+
+    /**
+     * Returns the handle under which the client finds the result
+     */
+    public long startTransaction(String session) {
+        admissionService.admitTransaction(session);
+        long handle = resultService.open(session);
+        onShard(session, () -> doStartTransaction(session));
+        return handle;
+    }
+
+    /**
+     * Returns the decision of the session from its log, null if it is not decided yet
+     * For clients whose handle is gone, e.g. after a restart
+     */
+    public Opcode getOutcome(String session) {
+        Data lastData = getLastDataEntry(session);
+        if (lastData != null && lastData.getOpcode() == END) {
+            lastData = dataRepository.findTopByIsStatusFalseAndSessionAndIdLessThanOrderByIdDesc(session, lastData.getId());
+            if (lastData == null) {
+                // the log is compacted, the checkpoint keeps the decision
+                lastData = dataRepository.findTopBySessionAndEventOrderByIdDesc(session, Event.CHECKPOINT);
             }
-        };
-        sessionTimer.get(session).schedule(task, 30 * 1000);
+        }
+        if (lastData != null && (lastData.getOpcode() == COMMIT || lastData.getOpcode() == ABORT)) {
+            return lastData.getOpcode();
+        }
+        return null;
     }
 
     /**
-     * Activates the node and starts the transaction by sending out PREPAREs
+     * Starts many transactions with one shard task per shard
+     * Returns the sessions that were admitted, the others were shed by the admission control
+     */
+    public List<String> startTransactions(Collection<String> sessions) {
+        List<String> started = new ArrayList<>();
+        for (String session : sessions) {
+            try {
+                admissionService.admitTransaction(session);
+            }
+            catch (OverloadedException e) {
+                continue;
+            }
+            resultService.open(session);
+            started.add(session);
+        }
+        startAdmitted(started);
+        return started;
+    }
+
+    /**
+     * Starts transactions that already passed the admission control, with one shard task per shard
+     * Every session still gets its own database transaction: its PREPAREs leave while it runs, so a failing
+     * session must not roll back the START and PREPARE records of the others
      */
-    public void startTransaction(String session) {
-        Data startMessage = new Data();
-        startMessage.setIsStatus(true);
-        startMessage.setMessage("Received start command from client");
-        startMessage.setSession(session);
-        saveData(startMessage);
+    public void startAdmitted(Collection<String> sessions) {
+        Map<Shard, List<String>> shards = new HashMap<>();
+        for (String session : sessions) {
+            shards.computeIfAbsent(shardRouter.getShard(session), k -> new ArrayList<>()).add(session);
+        }
+        for (Map.Entry<Shard, List<String>> e : shards.entrySet()) {
+            e.getKey().execute(() -> {
+                for (String session : e.getValue()) {
+                    inTransaction(() -> doStartTransaction(session));
+                }
+            });
+        }
+    }
 
+    /**
+     * Activates the node and starts the transaction by sending out PREPAREs
+     */
+    private void doStartTransaction(String session) {
         Node node = getNode(session);
+        if (node == null) {
+            admissionService.transactionEnded(session);
+            return;
+        }
+        state(session).setTraceId(tracingService.newId());
+        resultService.started(session);
+        writeEvent(session, Event.START);
+
         node.setActive(true);
+        if (isPaxos(node)) {
+            // a new instance on the acceptors, what they accepted in earlier runs of the session does not count
+            node.setInstance(tracingService.now());
+        }
         nodeService.saveNode(node);
+        watchPeers(node);
 
-        for (String s : getSubordinates()) {
-            writeSendLog(node.getSession(), PREPARE, s);
-            sendMessage(session, s, PREPARE, 1);
+        // no subordinate is prepared yet, so nobody has to learn about the abort
+        if (isSubordinateSuspected(node)) {
+            writeRecord(session, ABORT);
+            writeRecord(session, END);
+            return;
+        }
+        // the coordinator's own writes are locked before anyone is asked, a conflict aborts right away
+        if (!participant.prepare(session)) {
+            writeRecord(session, ABORT);
+            writeRecord(session, END);
+            return;
+        }
+
+        // a single subordinate can decide on its own, the coordinator only has to remember it asked
+        Opcode msg = PREPARE;
+        if (onePhaseEnabled && node.getSubordinates().size() == 1) {
+            writeRecord(session, ONE_PHASE);
+            msg = ONE_PHASE;
+        }
+        else if (isLinear(node)) {
+            startChain(node);
+            return;
+        }
+
+        for (String s : node.getSubordinates()) {
+            writeSendLog(node.getSession(), msg, s);
+            sendMessage(session, s, msg, 1);
         }
 
         if (node.getDieAfter().equals("prepare")) {
             die(node.getSession());
             return;
         }
-        startTimer(session, voteTimer, "Not all votes received");
+        startTimer(session, voteTimer, Event.MISSING_VOTES);
+    }
+
+    /**
+     * Linear mode: the PREPARE passes the subordinates one after the other and the last one decides
+     * The decision travels back along the chain, so every node only talks to its two neighbours
+     */
+    private void startChain(Node node) {
+        String session = node.getSession();
+        List<String> chain = node.getSubordinates();
+        node.setSuccessor(chain.get(0));
+        nodeService.saveNode(node);
+        // the coordinator does not decide, after a crash it has to ask down the chain
+        writeRecord(session, PREPARE);
+        writeSendLog(session, PREPARE, node.getSuccessor());
+        sendChainPrepare(session, node.getSuccessor(), chain.subList(1, chain.size()));
+
+        if (node.getDieAfter().equals("prepare")) {
+            die(session);
+            return;
+        }
+        startTimer(session, responseTimer, Event.NO_RESPONSE_AFTER_VOTE);
     }
 
-    public synchronized void receiveMessage(String session, Data data) {
-        initMessageBuffer(session);
-        bufferMessages.get(session).add(data);
+    /**
+     * Buffers the message on the session's shard, throws if the mailboxes are full
+     */
+    public void receiveMessage(String session, Data data) {
+        admissionService.admitMessage(session);
+        data.setTimeMicros(tracingService.now());
+        data.setSpanId(tracingService.newId());
+        Shard shard = shardRouter.getShard(session);
+        shard.execute(() -> shard.getSession(session).getMessages().add(data));
     }
 
     private void handlePrepare(Node node) {
-        String msg;
+        // a PREPARE overtaken by the decision must not put the node in doubt again
+        Data lastData = getLastDataEntry(node.getSession());
+        if (lastData != null && (lastData.getOpcode() == COMMIT || lastData.getOpcode() == ABORT
+                || lastData.getOpcode() == END)) {
+            return;
+        }
+        watchPeers(node);
+        // the vote setting still forces a NO, then the participant is not even asked
+        boolean vote = node.getVote() && participant.prepare(node.getSession());
+        if (isIntermediate(node) && vote) {
+            if (!isSubordinateSuspected(node)) {
+                forwardPrepare(node);
+                return;
+            }
+            // the subtree cannot commit without the suspected subordinate
+            vote = false;
+        }
+
+        Opcode msg;
+        boolean onePhase = state(node.getSession()).isOnePhase();
 
-        if (node.getVote()) {
-            writeRecord(node.getSession(), PREPARE);
+        if (vote) {
+            // with one-phase commit the vote is the decision
+            writeRecord(node.getSession(), onePhase ? COMMIT : PREPARE);
             msg = YES;
         }
         else {
@@ -285,8 +853,8 @@ public class DataService {
         writeSendLog(node.getSession(), msg, node.getCoordinator());
         sendMessage(node.getSession(), node.getCoordinator(), msg, 1);
 
-        if (msg.equals(YES)) {
-            startTimer(node.getSession(), responseTimer, "No response after vote");
+        if (msg == YES && !onePhase) {
+            startTimer(node.getSession(), responseTimer, Event.NO_RESPONSE_AFTER_VOTE);
         }
 
         if (node.getDieAfter().equals("vote")) {
@@ -294,43 +862,280 @@ public class DataService {
         }
     }
 
+    /**
+     * Linear mode: votes and passes the PREPARE on to the next node of the chain
+     * The last node decides, a NO anywhere aborts, either way the decision goes back to the predecessor
+     */
+    private void handleChainPrepare(Node node, Data data) {
+        String session = node.getSession();
+        Data lastData = getLastDataEntry(session);
+        if (lastData != null && (lastData.getOpcode() == COMMIT || lastData.getOpcode() == ABORT
+                || lastData.getOpcode() == END)) {
+            return;
+        }
+        List<String> chain = data.getChain();
+        node.setMode(LINEAR);
+        node.setPredecessor(peerService.getUrl(data.getPeer()));
+        node.setSuccessor(chain.isEmpty() ? null : chain.get(0));
+        nodeService.saveNode(node);
+        watchPeers(node);
+
+        boolean vote = node.getVote() && participant.prepare(session);
+        if (vote && node.getSuccessor() != null && failureDetector.isSuspected(node.getSuccessor())) {
+            // the chain cannot be completed without the suspected successor
+            writeEvent(session, Event.PEER_SUSPECTED);
+            metricsService.increment("failureDetector.aborts");
+            vote = false;
+        }
+        Opcode record = !vote ? ABORT : (node.getSuccessor() == null) ? COMMIT : PREPARE;
+        writeRecord(session, record);
+
+        if (node.getDieAfter().equals("prepare")) {
+            die(session);
+            return;
+        }
+
+        if (record == PREPARE) {
+            writeSendLog(session, PREPARE, node.getSuccessor());
+            sendChainPrepare(session, node.getSuccessor(), chain.subList(1, chain.size()));
+            startTimer(session, responseTimer, Event.NO_RESPONSE_AFTER_VOTE);
+        }
+        else {
+            writeSendLog(session, record, node.getPredecessor());
+            sendMessage(session, node.getPredecessor(), record, 1);
+        }
+
+        if (node.getDieAfter().equals("vote")) {
+            die(session);
+        }
+    }
+
+    /**
+     * Linear mode: records the decision coming up the chain and passes it on to the predecessor
+     * Every node behind this one recorded it before, so there are no ACKs and the coordinator ends right away
+     */
+    private void handleChainDecision(Node node, Opcode decision) {
+        String session = node.getSession();
+        Data lastData = getLastDataEntry(session);
+        if (lastData != null && (lastData.getOpcode() == decision || lastData.getOpcode() == END)) {
+            return;
+        }
+        state(session).cancelTimer();
+        writeRecord(session, decision);
+
+        if (node.getDieAfter().equals("commit/abort")) {
+            die(session);
+            return;
+        }
+
+        if (node.getPredecessor() == null) {
+            writeRecord(session, END);
+            return;
+        }
+        writeSendLog(session, decision, node.getPredecessor());
+        sendMessage(session, node.getPredecessor(), decision, 1);
+
+        if (node.getDieAfter().equals("result")) {
+            die(session);
+        }
+    }
+
+    /**
+     * A send that was delivered twice or a decision resent within the same run is not logged again, a repeated
+     * decision is only acknowledged again if this node already acknowledged it before
+     */
+    private void handleDuplicate(Node node, Data data) {
+        metricsService.increment("messages.duplicates");
+        if (data.getOpcode() == ONE_PHASE) {
+            resendOnePhaseOutcome(node);
+            return;
+        }
+        // the linear mode has no ACKs
+        if ((data.getOpcode() != COMMIT && data.getOpcode() != ABORT) || isLinear(node)) {
+            return;
+        }
+        Data lastData = getLastDataEntry(node.getSession());
+        if (lastData == null) {
+            return;
+        }
+        Opcode lastMsg = lastData.getOpcode();
+        boolean acknowledged = isIntermediate(node) ? lastMsg == END : lastMsg == data.getOpcode();
+        if (acknowledged) {
+            sendMessage(node.getSession(), node.getCoordinator(), ACK, 1);
+        }
+    }
+
+    /**
+     * A coordinator that asks again with ONE_PHASE lost the outcome, it is sent again once it is decided
+     * Returns false if this node has not decided yet
+     */
+    private boolean resendOnePhaseOutcome(Node node) {
+        Data lastData = getLastDataEntry(node.getSession());
+        if (lastData != null && lastData.getOpcode() == END) {
+            lastData = dataRepository.findTopByIsStatusFalseAndSessionAndIdLessThanOrderByIdDesc(node.getSession(), lastData.getId());
+        }
+        if (lastData != null && (lastData.getOpcode() == COMMIT || lastData.getOpcode() == ABORT)) {
+            Opcode msg = (lastData.getOpcode() == COMMIT) ? YES : NO;
+            writeSendLog(node.getSession(), msg, node.getCoordinator());
+            sendMessage(node.getSession(), node.getCoordinator(), msg, 1);
+            return true;
+        }
+        return false;
+    }
+
     private void handleVote(Node node, Data data) {
-        initVotes(node.getSession());
-        votes.get(node.getSession()).put(data.getNode(), data.getMessage());
+        // votes arriving after the decision, e.g. after an early abort, are only logged
+        Data lastData = getLastDataEntry(node.getSession());
+        if (lastData != null && (lastData.getOpcode() == COMMIT || lastData.getOpcode() == ABORT || lastData.getOpcode() == END)) {
+            return;
+        }
+        SessionState state = state(node.getSession());
+        state.initVotes().put(peerService.getUrl(data.getPeer()), data.getOpcode());
+        checkVotes(state);
     }
 
     private void handleCommit(Node node) {
-        if (timer.containsKey(node.getSession())) {
-            timer.get(node.getSession()).cancel();
+        if (isSubtreeEnded(node)) {
+            writeSendLog(node.getSession(), ACK, node.getCoordinator());
+            sendMessage(node.getSession(), node.getCoordinator(), ACK, 1);
+            return;
         }
-        writeRecord(node.getSession(), COMMIT);
+        state(node.getSession()).cancelTimer();
+        writeDecision(node.getSession(), COMMIT);
 
         if (node.getDieAfter().equals("commit/abort")) {
             die(node.getSession());
             return;
         }
 
+        if (isIntermediate(node)) {
+            forwardDecision(node, COMMIT);
+            return;
+        }
+
         writeSendLog(node.getSession(), ACK, node.getCoordinator());
         sendMessage(node.getSession(), node.getCoordinator(), ACK, 1);
     }
 
     private void handleAbort(Node node) {
-        if (timer.containsKey(node.getSession())) {
-            timer.get(node.getSession()).cancel();
+        if (isSubtreeEnded(node)) {
+            writeSendLog(node.getSession(), ACK, node.getCoordinator());
+            sendMessage(node.getSession(), node.getCoordinator(), ACK, 1);
+            return;
         }
-        writeRecord(node.getSession(), ABORT);
+        state(node.getSession()).cancelTimer();
+        writeDecision(node.getSession(), ABORT);
 
         if (node.getDieAfter().equals("commit/abort")) {
             die(node.getSession());
         }
 
+        if (isIntermediate(node)) {
+            forwardDecision(node, ABORT);
+            return;
+        }
+
         writeSendLog(node.getSession(), ACK, node.getCoordinator());
         sendMessage(node.getSession(), node.getCoordinator(), ACK, 1);
     }
 
+    /**
+     * An intermediate coordinator that already ended its subtree, e.g. after aborting it during recovery,
+     * only acknowledges the decision, its subordinates would drop a second round as duplicates
+     */
+    private boolean isSubtreeEnded(Node node) {
+        if (!isIntermediate(node)) {
+            return false;
+        }
+        Data lastData = getLastDataEntry(node.getSession());
+        return lastData != null && lastData.getOpcode() == END;
+    }
+
     private void handleAck(Node node, Data data) {
-        initAcks(node.getSession());
-        acksReceived.get(node.getSession()).add(data.getNode());
+        SessionState state = state(node.getSession());
+        state.initAcks();
+        state.getAcksReceived().add(peerService.getUrl(data.getPeer()));
+    }
+
+    /**
+     * An intermediate coordinator that votes YES itself asks its own subordinates before voting
+     */
+    private void forwardPrepare(Node node) {
+        for (String s : node.getSubordinates()) {
+            writeSendLog(node.getSession(), PREPARE, s);
+            sendMessage(node.getSession(), s, PREPARE, 1);
+        }
+
+        if (node.getDieAfter().equals("prepare")) {
+            die(node.getSession());
+            return;
+        }
+        startTimer(node.getSession(), voteTimer, Event.MISSING_VOTES);
+    }
+
+    /**
+     * Votes YES upwards only if the whole subtree voted YES, otherwise aborts the subtree and votes NO
+     */
+    private void sendSubtreeVote(Node node, SessionState state, Map<String, Opcode> votes) {
+        // late votes after the parent already decided must not produce a vote anymore
+        Data lastData = getLastDataEntry(node.getSession());
+        if (lastData != null && (lastData.getOpcode() == COMMIT || lastData.getOpcode() == ABORT)) {
+            votes.clear();
+            return;
+        }
+
+        Opcode msg;
+
+        if (!votes.containsValue(NO)) {
+            writeEvent(node.getSession(), Event.ALL_YES);
+            // handed the decision with ONE_PHASE, the intermediate coordinator commits its subtree itself
+            writeRecord(node.getSession(), state.isOnePhase() ? COMMIT : PREPARE);
+            msg = YES;
+        }
+        else {
+            writeEvent(node.getSession(), Event.ONE_NO);
+            writeRecord(node.getSession(), ABORT);
+            msg = NO;
+            if (sendAbort(node, state, votes) == 0) {
+                writeRecord(node.getSession(), END);
+            }
+        }
+        votes.clear();
+
+        writeSendLog(node.getSession(), msg, node.getCoordinator());
+        sendMessage(node.getSession(), node.getCoordinator(), msg, 1);
+
+        if (msg == YES && state.isOnePhase()) {
+            forwardDecision(node, COMMIT);
+            state.setAckParent(false);
+        }
+        else if (msg == YES) {
+            startTimer(node.getSession(), responseTimer, Event.NO_RESPONSE_AFTER_VOTE);
+        }
+
+        if (node.getDieAfter().equals("vote")) {
+            die(node.getSession());
+        }
+    }
+
+    /**
+     * Passes the decision of the parent down the subtree, the parent is acknowledged by allAcks
+     */
+    private void forwardDecision(Node node, Opcode decision) {
+        SessionState state = state(node.getSession());
+        state.initAcks();
+        state.setAckParent(true);
+        for (String s : node.getSubordinates()) {
+            writeSendLog(node.getSession(), decision, s);
+            sendMessage(node.getSession(), s, decision, 1);
+            state.getAcksNeeded().add(s);
+        }
+
+        if (node.getDieAfter().equals("result")) {
+            die(node.getSession());
+            return;
+        }
+        startTimer(node.getSession(), ackTimer, Event.MISSING_ACKS);
     }
 
     /**
@@ -338,57 +1143,120 @@ public class DataService {
      */
     public void startRecovery(String session) {
         Node node = getNode(session);
+        if (node == null) {
+            // the session was cleared while the timer was due
+            return;
+        }
         node.setActive(true);
         nodeService.saveNode(node);
 
         Data lastData = getLastDataEntry(session);
+        if (lastData == null && isPaxos(node) && !node.getIsSubordinate()) {
+            // the COMMIT may be chosen already, only a majority of the acceptors can tell
+            Opcode proposal = state(session).getProposal();
+            startPaxosRound(node, (proposal != null) ? proposal : ABORT);
+            startTimer(session, responseTimer, Event.MISSING_ACCEPTS);
+            return;
+        }
         if (lastData == null) {
             writeRecord(session, ABORT);
+            if (isIntermediate(node)) {
+                writeSendLog(session, NO, node.getCoordinator());
+                sendMessage(session, node.getCoordinator(), NO, 1);
+            }
             startEndTimer(session,10000);
             return;
         }
-        String lastMsg = lastData.getMessage();
-        if (lastMsg.equalsIgnoreCase(PREPARE)) {
-            writeSendLog(session, "INQURY", node.getCoordinator());
-            sendInquiry(session, node.getCoordinator(), 1);
-            startTimer(session, responseTimer, "No response after inquiry");
+        Opcode lastMsg = lastData.getOpcode();
+        if (lastMsg == ONE_PHASE) {
+            // only the subordinate knows the outcome, so it is asked again until it answers
+            for (String s : node.getSubordinates()) {
+                writeSendLog(session, ONE_PHASE, s);
+                sendMessage(session, s, ONE_PHASE, 1);
+            }
+            startTimer(session, voteTimer, Event.MISSING_VOTES);
+        }
+        else if (lastMsg == PREPARE) {
+            String source = decisionSource(node);
+            writeSendLog(session, INQUIRY, source);
+            sendInquiry(session, source, 1);
+            if (isPaxos(node) && node.getIsSubordinate()) {
+                // the acceptors answer while the coordinator is down, without a chosen COMMIT it aborts
+                startPaxosRound(node, ABORT);
+            }
+            startTimer(session, responseTimer, Event.NO_RESPONSE_AFTER_INQUIRY);
         }
-        else if ((lastMsg.equalsIgnoreCase(COMMIT) || lastMsg.equalsIgnoreCase(ABORT)) &&
-                node.getIsCoordinator()) {
-            initAcks(session);
+        else if ((lastMsg == COMMIT || lastMsg == ABORT) && isLinear(node)) {
+            // the whole chain decided before the decision reached the coordinator, it only has to end
+            if (node.getPredecessor() == null) {
+                writeRecord(session, END);
+            }
+        }
+        else if ((lastMsg == COMMIT || lastMsg == ABORT) && node.getIsCoordinator()) {
+            SessionState state = state(session);
+            state.initAcks();
             for (String sub : node.getSubordinates()) {
-                if (!acksReceived.get(session).contains(sub)) {
+                if (!state.getAcksReceived().contains(sub)) {
                     writeSendLog(session, lastMsg, sub);
                     sendMessage(session, sub, lastMsg, 1);
-                    if (!acksNeeded.get(session).contains(sub)) {
-                        acksNeeded.get(session).add(sub);
-                    }
+                    state.getAcksNeeded().add(sub);
                 }
             }
-            startTimer(session, ackTimer, "Not all acknowledgements received");
+            startTimer(session, ackTimer, Event.MISSING_ACKS);
         }
     }
 
     /**
      * Handle inquiries by resending the last state
      */
-    public void handleInquiry(String session, String sender, int transId) {
-        writeReceiveLog(session, "INQUIRY", sender);
-        Data lastData = getLastDataEntry(session);
-        if (lastData == null) {
-            initVotes(session);
-            votes.get(session).put(sender, null);
+    public void handleInquiry(String session, String sender, int transId, Long parentSpan) {
+        onShard(session, () -> doHandleInquiry(session, sender, transId, parentSpan));
+    }
+
+    private void doHandleInquiry(String session, String sender, int transId, Long parentSpan) {
+        SessionState state = state(session);
+        Node node = getNode(session);
+        writeReceiveLog(session, INQUIRY, peerService.getId(sender), parentSpan);
+        // inquiries come in storms after a coordinator failure, the decision is answered from memory
+        Opcode lastMsg = decisionCache.getLastRecord(session, () -> {
+            Data lastData = getLastDataEntry(session);
+            return (lastData != null) ? lastData.getOpcode() : null;
+        });
+        // in the central mode only subordinates ask, so a node that never saw the PREPARE learns the mode here
+        if (lastMsg == null && isPaxos(node) && !node.getIsSubordinate()) {
+            // the COMMIT may be waiting for the acceptors, presuming an abort could contradict it
+            return;
+        }
+        boolean linear = isLinear(node) || (lastMsg == null && !node.getSubordinates().contains(sender));
+        if (lastMsg == null && linear) {
+            // the chain broke before reaching this node, the end of the chain cannot have committed
+            writeRecord(session, ABORT);
+            lastMsg = ABORT;
+        }
+        if (lastMsg == null) {
+            state.initVotes().put(sender, null);
             return;
         }
-        String lastMsg = lastData.getMessage();
-        if (lastMsg.equalsIgnoreCase(COMMIT) || lastMsg.equalsIgnoreCase(ABORT)) {
+        if (lastMsg == COMMIT || lastMsg == ABORT) {
             writeSendLog(session, lastMsg, sender);
             sendMessage(session, sender, lastMsg, transId);
-            initAcks(session);
-            if (!acksNeeded.get(session).contains(sender)) {
-                acksNeeded.get(session).add(sender);
+            if (!linear) {
+                state.initAcks();
+                state.getAcksNeeded().add(sender);
             }
         }
+        else if (lastMsg == PREPARE && linear) {
+            // in doubt as well, the predecessor is answered once the decision comes up the chain
+            return;
+        }
+        else if (lastMsg == PREPARE && node.getIsSubordinate()) {
+            // an intermediate coordinator in doubt forwards the decision as soon as it knows it
+            return;
+        }
+        else if (lastMsg == ONE_PHASE) {
+            // the decision is with the subordinate, presuming an abort could contradict it
+            return;
+        }
         else {
             writeSendLog(session, ABORT, sender);
             sendMessage(session, sender, ABORT, transId);
@@ -400,7 +1268,7 @@ public class DataService {
         node.setActive(false);
         node.setDieAfter("never");
         nodeService.saveNode(node);
-        writeLog(session, "Node died");
+        writeEvent(session, Event.NODE_DIED);
         startTimer(session, respawnTimer);
     }
 
@@ -408,154 +1276,324 @@ public class DataService {
         startTimer(session, ms, null);
     }
 
-    public void startTimer(String session, int ms, String msg) {
-        if (timer.containsKey(session)) {
-            timer.get(session).cancel();
-        }
-        this.timer.put(session, new Timer());
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run() {
-                if (msg != null) {
-                    writeLog(session, msg);
-                }
-                writeLog(session,"Start recovery");
-                startRecovery(session);
+    public void startTimer(String session, int ms, Event msg) {
+        Shard shard = shardRouter.getShard(session);
+        SessionState state = state(session);
+        state.setTimer(shard.schedule(() -> inTransaction(() -> {
+            if (msg != null) {
+                writeEvent(session, msg);
             }
-        };
-        this.timer.get(session).schedule(timerTask, ms);
+            writeEvent(session, Event.START_RECOVERY);
+            startRecovery(session);
+        }), ms));
+        state.setTimerEvent(msg);
     }
 
     /**
-     * Special case where the coordinator aborted after recovering and received no inquries
-     * Then write END
+     * Regularly checks the sessions waiting for votes or for a decision against the failure detector
+     * A suspected subordinate counts as a NO vote, a suspected coordinator starts the recovery at once
      */
-    public void startEndTimer(String session, int ms) {
-        if (timer.containsKey(session)) {
-            timer.get(session).cancel();
+    private void checkSuspects(Shard shard) {
+        if (!failureDetector.hasSuspects()) {
+            return;
         }
-        this.timer.put(session, new Timer());
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run() {
-                writeRecord(session, END);
+        for (SessionState state : shard.getSessions()) {
+            Event pending = state.getTimerEvent();
+            if (pending == Event.MISSING_VOTES || pending == Event.NO_RESPONSE_AFTER_VOTE) {
+                inTransaction(() -> checkSuspects(state, pending));
             }
-        };
-        this.timer.get(session).schedule(timerTask, ms);
+        }
     }
 
-    public void sendMessage(String session, String recipient, String msg, int transId) {
+    private void checkSuspects(SessionState state, Event pending) {
+        String session = state.getSession();
         Node node = getNode(session);
+        if (node == null || !node.getActive()) {
+            return;
+        }
+        if (pending == Event.MISSING_VOTES) {
+            if (isOnePhase(session)) {
+                // the subordinate may have committed already, only its answer decides
+                return;
+            }
+            Map<String, Opcode> votes = state.initVotes();
+            for (String s : node.getSubordinates()) {
+                if (!votes.containsKey(s) && failureDetector.isSuspected(s)) {
+                    writeEvent(session, Event.PEER_SUSPECTED);
+                    metricsService.increment("failureDetector.aborts");
+                    votes.put(s, NO);
+                    checkVotes(state);
+                    return;
+                }
+            }
+        }
+        else if (failureDetector.isSuspected(decisionSource(node))) {
+            state.cancelTimer();
+            writeEvent(session, Event.PEER_SUSPECTED);
+            writeEvent(session, Event.START_RECOVERY);
+            metricsService.increment("failureDetector.recoveries");
+            startRecovery(session);
+        }
+    }
 
-        MultiValueMap<String, String> message = new LinkedMultiValueMap<>();
-        message.add("message", msg);
-        message.add("node", node.getNode());
-        message.add("coordinator", node.getCoordinator());
-        message.add("transId", String.valueOf(transId));
+    /**
+     * Special case where the coordinator aborted after recovering and received no inquries
+     * Then write END
+     */
+    public void startEndTimer(String session, int ms) {
+        Shard shard = shardRouter.getShard(session);
+        state(session).setTimer(shard.schedule(() -> inTransaction(() -> writeRecord(session, END)), ms));
+    }
 
-        HttpEntity<Map> request = getRequest(message);
+    public void sendMessage(String session, String recipient, Opcode msg, int transId) {
+        HttpEntity<MessagePostDTO> request = (transId == 1)
+                ? state(session).getMessageRequests().computeIfAbsent(msg, k -> getMessageRequest(session, msg, transId))
+                : getMessageRequest(session, msg, transId);
+        // the trace context goes beside the cached request, so a traced send copies nothing
+        Long traceId = null;
+        Long spanId = null;
+        if (tracingService.isEnabled()) {
+            SessionState state = state(session);
+            traceId = state.getTraceId();
+            spanId = state.takeSendSpan();
+        }
 
-        try {
-            restTemplate.exchange(recipient + "/message?session={session}", HttpMethod.POST, request, String.class, session);
+        // a NO decides the transaction, so it is never held back
+        // in epoch mode the PREPAREs and decisions of a batch also leave together, one request per peer
+        long seq = sequence.incrementAndGet();
+        if (transport.isEnabled() && (msg == ACK || msg == YES || (epochEnabled && msg != NO))) {
+            transport.defer(recipient, session, request.getBody(), seq, traceId, spanId);
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        else {
+            transport.send(recipient, session, request, seq, traceId, spanId);
         }
     }
 
-    public void sendInquiry(String session, String recipient, int transId) {
-        Node node = getNode(session);
-
-        MultiValueMap<String, String> message = new LinkedMultiValueMap<>();
-        message.add("sender", node.getNode());
-        message.add("transId", String.valueOf(transId));
-
-        HttpEntity<Map> request = getRequest(message);
+    /**
+     * Sends the PREPARE of the linear mode with the part of the chain that comes after the recipient
+     */
+    private void sendChainPrepare(String session, String recipient, List<String> chain) {
+        MessagePostDTO message = getMessageRequest(session, PREPARE, 1).getBody();
+        message.setChain(new ArrayList<>(chain));
+        Long traceId = null;
+        Long spanId = null;
+        if (tracingService.isEnabled()) {
+            SessionState state = state(session);
+            traceId = state.getTraceId();
+            spanId = state.takeSendSpan();
+        }
+        transport.send(recipient, session, new HttpEntity<>(message, OutboxService.JSON_HEADERS),
+                sequence.incrementAndGet(), traceId, spanId);
+    }
 
-        try {
-            restTemplate.exchange(recipient + "/inquiry?session={session}", HttpMethod.POST, request, String.class, session);
+    public void sendInquiry(String session, String recipient, int transId) {
+        SessionState state = state(session);
+        if (state.getInquiryRequest() == null || transId != 1) {
+            state.setInquiryRequest(getInquiryRequest(session, transId));
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        HttpEntity<InquiryPostDTO> request = state.getInquiryRequest();
+        if (tracingService.isEnabled()) {
+            InquiryPostDTO inquiry = new InquiryPostDTO();
+            inquiry.setSender(request.getBody().getSender());
+            inquiry.setTransId(request.getBody().getTransId());
+            inquiry.setTraceId(state.getTraceId());
+            inquiry.setSpanId(state.takeSendSpan());
+            request = new HttpEntity<>(inquiry, OutboxService.JSON_HEADERS);
         }
+        transport.sendInquiry(recipient, session, request);
     }
 
     public List<Data> getAllData(String session) {
-        return this.dataRepository.findAllBySession(session);
+        return this.dataRepository.findAllBySessionOrderByIdAsc(session);
     }
 
     public Data getLastDataEntry(String session) {
         return this.dataRepository.findTopByIsStatusFalseAndSessionOrderByIdDesc(session);
     }
 
-    public synchronized void saveData(Data newData) {
-        dataRepository.saveAndFlush(newData);
+    /**
+     * Renders the human-readable log line of a data entry
+     */
+    public String renderMessage(Data data) {
+        switch (data.getType()) {
+            case SEND:
+                return String.format("Sending \"%s\" to %s", data.getOpcode(), peerService.getUrl(data.getPeer()));
+            case RECEIVE:
+                return String.format("Receiving \"%s\" from %s", data.getOpcode(), peerService.getUrl(data.getPeer()));
+            case EVENT:
+                return (data.getOpcode() != null)
+                        ? String.format(data.getEvent().getText(), data.getOpcode())
+                        : data.getEvent().getText();
+            default:
+                return data.getOpcode().name();
+        }
+    }
+
+    public void saveData(Data newData) {
+        dataRepository.save(newData);
     }
 
     private Node getNode(String session) {
         return this.nodeRepository.findBySession(session);
     }
 
-    private List<String> getSubordinates() {
-        return nodeRepository.findTopByOrderByIdDesc().getSubordinates();
+    /**
+     * A node that is coordinator and subordinate coordinates its own subtree in the tree commit mode
+     */
+    private boolean isIntermediate(Node node) {
+        return node.getIsCoordinator() && node.getIsSubordinate() && !node.getSubordinates().isEmpty();
+    }
+
+    private boolean isLinear(Node node) {
+        return LINEAR.equals(node.getMode());
     }
 
-    private void initMessageBuffer(String session) {
-        if (!bufferMessages.containsKey(session)) {
-            bufferMessages.put(session, new ArrayList<>());
-        }
+    private boolean isPaxos(Node node) {
+        return !isLinear(node) && node.getAcceptors() != null && !node.getAcceptors().isEmpty();
     }
 
-    private void initVotes(String session) {
-        if (!votes.containsKey(session)) {
-            votes.put(session, new HashMap<>());
-        }
+    /**
+     * The node asked for the decision when in doubt, in the linear mode it comes from further down the chain
+     */
+    private String decisionSource(Node node) {
+        return isLinear(node) ? node.getSuccessor() : node.getCoordinator();
     }
 
-    private void initAcks(String session) {
-        if (!acksNeeded.containsKey(session)) {
-            acksNeeded.put(session, new ArrayList<>());
-        }
-        if (!acksReceived.containsKey(session)) {
-            acksReceived.put(session, new ArrayList<>());
+    /**
+     * Returns the protocol state of the session, must only be called on the session's shard
+     */
+    private SessionState state(String session) {
+        return shardRouter.getShard(session).getSession(session);
+    }
+
+    private void onShard(String session, Runnable task) {
+        shardRouter.getShard(session).execute(() -> inTransaction(task));
+    }
+
+    private void inTransaction(Runnable task) {
+        transactionTemplate.execute(status -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the task once the current transaction committed, at once if there is none, e.g. in the simulation
+     */
+    private void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
     }
 
-    private void writeSendLog(String session, String msg, String recipient) {
+    private void writeSendLog(String session, Opcode msg, String recipient) {
         Data log = new Data();
         log.setIsStatus(true);
-        log.setMessage(String.format("Sending \"%s\" to %s", msg, recipient));
+        log.setType(LogType.SEND);
+        log.setOpcode(msg);
+        log.setPeer(peerService.getId(recipient));
         log.setSession(session);
+        trace(log);
+        state(session).setSendSpan(log.getSpanId());
         saveData(log);
     }
 
-    private void writeReceiveLog(String session, String msg, String sender) {
+    private void writeReceiveLog(String session, Opcode msg, Integer sender, Long parentSpan) {
         Data log = new Data();
         log.setIsStatus(true);
-        log.setMessage(String.format("Receiving \"%s\" from %s", msg, sender));
+        log.setType(LogType.RECEIVE);
+        log.setOpcode(msg);
+        log.setPeer(sender);
         log.setSession(session);
+        trace(log);
+        log.setParentId(parentSpan);
         saveData(log);
     }
 
-    private void writeLog(String session, String msg) {
+    private void writeEvent(String session, Event event) {
         Data log = new Data();
         log.setIsStatus(true);
-        log.setMessage(msg);
+        log.setType(LogType.EVENT);
+        log.setEvent(event);
         log.setSession(session);
+        trace(log);
         saveData(log);
     }
 
-    private void writeRecord(String session, String msg) {
+    private void writeRecord(String session, Opcode msg) {
         Data data = new Data();
         data.setIsStatus(false);
-        data.setMessage(msg);
+        data.setType(LogType.RECORD);
+        data.setOpcode(msg);
         data.setSession(session);
+        trace(data);
         saveData(data);
+        decisionCache.recordWritten(session, msg);
+        resultService.recordWritten(session, msg);
+
+        // every path to a decision ends here, the participant learns it once the record is committed
+        if (msg == COMMIT) {
+            afterCommit(() -> participant.commit(session));
+        }
+        else if (msg == ABORT) {
+            afterCommit(() -> participant.abort(session));
+        }
+
+        if (msg == END) {
+            admissionService.transactionEnded(session);
+            compactionService.scheduleCompaction(session);
+        }
+    }
+
+    /**
+     * Stamps a log entry with the time, the session's trace and a new span
+     */
+    private void trace(Data log) {
+        log.setTimeMicros(tracingService.now());
+        log.setTraceId(state(log.getSession()).getTraceId());
+        log.setSpanId(tracingService.newId());
+    }
+
+    /**
+     * Writes the decision record unless it is already the last record, e.g. a subordinate that voted NO
+     */
+    private void writeDecision(String session, Opcode msg) {
+        Data lastData = getLastDataEntry(session);
+        if (lastData == null || lastData.getOpcode() != msg) {
+            writeRecord(session, msg);
+        }
     }
 
-    private HttpEntity<Map> getRequest(MultiValueMap<String, String> message) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Type", MediaType.APPLICATION_JSON_VALUE);
-        return new HttpEntity<>(message.toSingleValueMap(), headers);
+    /**
+     * Requests only depend on the session's node and the message, so they are built once and reused
+     */
+    private HttpEntity<MessagePostDTO> getMessageRequest(String session, Opcode msg, int transId) {
+        Node node = getNode(session);
+        MessagePostDTO message = new MessagePostDTO();
+        message.setMessage(msg.name());
+        message.setNode(node.getNode());
+        message.setCoordinator(node.getCoordinator());
+        message.setTransId(transId);
+        // only the direct subordinates of the coordinator ask the acceptors, a subtree waits for its own coordinator
+        if (msg == PREPARE && isPaxos(node) && !node.getIsSubordinate()) {
+            message.setAcceptors(node.getAcceptors());
+            message.setInstance(node.getInstance());
+        }
+        return new HttpEntity<>(message, OutboxService.JSON_HEADERS);
+    }
+
+    private HttpEntity<InquiryPostDTO> getInquiryRequest(String session, int transId) {
+        Node node = getNode(session);
+        InquiryPostDTO inquiry = new InquiryPostDTO();
+        inquiry.setSender(node.getNode());
+        inquiry.setTransId(transId);
+        return new HttpEntity<>(inquiry, OutboxService.JSON_HEADERS);
     }
 }
@@ -0,0 +1,129 @@
+package dds20.service;
+
+import dds20.entity.Opcode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Decision Cache
+ * This class keeps the last record (COMMIT, ABORT, PREPARE, END or none yet) of recently used sessions in memory,
+ * so inquiries are answered without reading the log. It is filled when a record is written and holds at most
+ * a fixed number of sessions, the least recently used are evicted first and every entry expires after a while.
+ */
+@Service
+public class DecisionCache {
+
+    private final int maxSize;
+    private final long ttl;
+
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public DecisionCache(MetricsService metricsService,
+                         @Value("${dds20.decisionCache.size:10000}") int maxSize,
+                         @Value("${dds20.decisionCache.ttl:60000}") long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > DecisionCache.this.maxSize;
+            }
+        };
+        metricsService.registerGauge("decisionCache.size", this::size);
+        metricsService.registerGauge("decisionCache.hits", hits::get);
+        metricsService.registerGauge("decisionCache.misses", misses::get);
+        metricsService.registerGauge("decisionCache.hitRate", this::hitRate);
+    }
+
+    /**
+     * Returns the last record of the session, loading it from the log on a miss
+     * Null if the session has no record yet
+     */
+    public Opcode getLastRecord(String session, Supplier<Opcode> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(session);
+            if (entry != null && entry.expires > now) {
+                hits.incrementAndGet();
+                return entry.record;
+            }
+        }
+        misses.incrementAndGet();
+        Opcode record = loader.get();
+        put(session, record);
+        return record;
+    }
+
+    /**
+     * Updates the session's entry once the transaction that wrote the record commits, drops it on a rollback
+     */
+    public void recordWritten(String session, Opcode record) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(session, record);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    put(session, record);
+                }
+                else {
+                    invalidate(session);
+                }
+            }
+        });
+    }
+
+    public void invalidate(String session) {
+        synchronized (entries) {
+            entries.remove(session);
+        }
+    }
+
+    private void put(String session, Opcode record) {
+        if (maxSize <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(session, new Entry(record, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    private long size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Share of lookups answered from memory in percent
+     */
+    private long hitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return (total == 0) ? 0 : h * 100 / total;
+    }
+
+    private static final class Entry {
+
+        private final Opcode record;
+        private final long expires;
+
+        private Entry(Opcode record, long expires) {
+            this.record = record;
+            this.expires = expires;
+        }
+    }
+}
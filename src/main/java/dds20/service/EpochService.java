@@ -0,0 +1,116 @@
+package dds20.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Epoch Service
+ * This class groups the transactions started within a short window into one epoch and starts them together.
+ * The sessions of an epoch are started by one task per shard and their messages leave as one request per peer.
+ * Every session still gets its own database transaction, its own votes and its own outcome.
+ */
+@Service
+public class EpochService {
+
+    private final DataService dataService;
+    private final AdmissionService admissionService;
+    private final ResultService resultService;
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final long window;
+    private final int maxSize;
+
+    private List<String> epoch = new ArrayList<>();
+    private long epochId;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "epoch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public EpochService(DataService dataService, AdmissionService admissionService, ResultService resultService,
+                        MetricsService metricsService,
+                        @Value("${dds20.epoch.enabled:false}") boolean enabled,
+                        @Value("${dds20.epoch.window:20}") long window,
+                        @Value("${dds20.epoch.maxSize:500}") int maxSize) {
+        this.dataService = dataService;
+        this.admissionService = admissionService;
+        this.resultService = resultService;
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.window = window;
+        this.maxSize = maxSize;
+        metricsService.registerGauge("epoch.open", this::openSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Admits the transaction and adds it to the open epoch, the first one opens it and starts the window
+     * A full epoch is closed at once, returns the handle under which the client finds the result
+     */
+    public long submit(String session) {
+        admissionService.admitTransaction(session);
+        long handle = resultService.open(session);
+        List<String> full = null;
+        synchronized (this) {
+            epoch.add(session);
+            if (epoch.size() >= maxSize) {
+                full = close();
+            }
+            else if (epoch.size() == 1) {
+                long id = epochId;
+                executor.schedule(() -> closeEpoch(id), window, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            start(full);
+        }
+        return handle;
+    }
+
+    private void closeEpoch(long id) {
+        List<String> sessions;
+        synchronized (this) {
+            // the epoch filled up and was closed before its window ended
+            if (id != epochId || epoch.isEmpty()) {
+                return;
+            }
+            sessions = close();
+        }
+        start(sessions);
+    }
+
+    private List<String> close() {
+        List<String> sessions = epoch;
+        epoch = new ArrayList<>();
+        epochId++;
+        return sessions;
+    }
+
+    private void start(List<String> sessions) {
+        metricsService.increment("epoch.batches");
+        metricsService.add("epoch.transactions", sessions.size());
+        dataService.startAdmitted(sessions);
+    }
+
+    private synchronized long openSize() {
+        return epoch.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
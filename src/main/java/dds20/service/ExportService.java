@@ -0,0 +1,80 @@
+package dds20.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dds20.entity.Data;
+import dds20.repository.DataRepository;
+import dds20.rest.dto.ExportGetDTO;
+import dds20.rest.mapper.DTOMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Export Service
+ * This class streams log entries as JSON lines, one entry per line. The log is read in pages with the id
+ * of the last entry as cursor and every page is written out before the next is read, so the memory used
+ * does not grow with the size of the export.
+ */
+@Service
+public class ExportService {
+
+    private final DataRepository dataRepository;
+    private final DataService dataService;
+    private final ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${dds20.export.pageSize:500}")
+    private int pageSize;
+
+    @Autowired
+    public ExportService(@Qualifier("dataRepository") DataRepository dataRepository, DataService dataService,
+                         ObjectMapper objectMapper) {
+        this.dataRepository = dataRepository;
+        this.dataService = dataService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Writes the log of the session, or of all sessions on this server if session is null, to the stream
+     * Returns the number of entries written
+     */
+    public long export(String session, OutputStream out) throws IOException {
+        long count = 0;
+        long cursor = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            while (true) {
+                PageRequest page = PageRequest.of(0, pageSize);
+                List<Data> entries = (session != null)
+                        ? dataRepository.findAllBySessionAndIdGreaterThanOrderByIdAsc(session, cursor, page)
+                        : dataRepository.findAllByIdGreaterThanOrderByIdAsc(cursor, page);
+                for (Data data : entries) {
+                    ExportGetDTO exportGetDTO = DTOMapper.INSTANCE.convertEntityToExportGetDTO(data);
+                    exportGetDTO.setMessage(dataService.renderMessage(data));
+                    generator.writeObject(exportGetDTO);
+                    generator.writeRaw('\n');
+                    cursor = data.getId();
+                    count++;
+                }
+                generator.flush();
+                // with open-in-view the request keeps one persistence context, the written entries are dropped from it
+                entityManager.clear();
+                if (entries.size() < pageSize) {
+                    return count;
+                }
+            }
+        }
+    }
+}
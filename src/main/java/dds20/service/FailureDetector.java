@@ -0,0 +1,215 @@
+package dds20.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Failure Detector
+ * This class sends heartbeats to the coordinators and subordinates of the local sessions and computes a
+ * phi-accrual suspicion level from the arrival times of the answers. A peer is suspected once phi crosses
+ * the threshold, so a crash is noticed after a few missed heartbeats instead of a fixed protocol timeout.
+ * The pings block, so they run on a pool of their own and time out after half the interval. The scheduler
+ * thread only starts them and keeps its rate however slow a peer answers.
+ */
+@Service
+public class FailureDetector {
+
+    private static final int WINDOW = 100;
+
+    private final MetricsService metricsService;
+    private final RestTemplate restTemplate;
+    private final boolean enabled;
+    private final long interval;
+    private final double threshold;
+    private final long idleTimeout;
+
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // at most one ping per peer is pending, so the pool grows with the number of peers only
+    private final ExecutorService pings = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "heartbeat-ping");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public FailureDetector(MetricsService metricsService, RestTemplateBuilder restTemplateBuilder,
+                           @Value("${dds20.failureDetector.enabled:true}") boolean enabled,
+                           @Value("${dds20.failureDetector.interval:500}") long interval,
+                           @Value("${dds20.failureDetector.threshold:8}") double threshold,
+                           @Value("${dds20.session.expiry:30000}") long idleTimeout) {
+        this.metricsService = metricsService;
+        this.restTemplate = (restTemplateBuilder != null)
+                ? restTemplateBuilder.setConnectTimeout(Duration.ofMillis(interval / 2))
+                        .setReadTimeout(Duration.ofMillis(interval / 2)).build()
+                : null;
+        this.enabled = enabled;
+        this.interval = interval;
+        this.threshold = threshold;
+        this.idleTimeout = idleTimeout;
+        if (enabled) {
+            executor.scheduleAtFixedRate(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        metricsService.registerGauge("failureDetector.peers", peers::size);
+        metricsService.registerGauge("failureDetector.suspected",
+                () -> peers.keySet().stream().filter(this::isSuspected).count());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or keeps watching the peers, a peer no session asked for during the idle timeout is dropped
+     */
+    public void monitor(Collection<String> urls) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String url : urls) {
+            peers.computeIfAbsent(url, k -> new Peer()).lastUsed = now;
+        }
+    }
+
+    public boolean isSuspected(String url) {
+        return enabled && phi(url) > threshold;
+    }
+
+    public boolean hasSuspects() {
+        return enabled && peers.keySet().stream().anyMatch(this::isSuspected);
+    }
+
+    /**
+     * Returns the first suspected peer of the given ones, null if none is suspected
+     */
+    public String findSuspected(Collection<String> urls) {
+        for (String url : urls) {
+            if (isSuspected(url)) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Suspicion level of the peer, phi = -log10(probability that a heartbeat still arrives this late)
+     * The intervals are taken as normally distributed, the CDF is approximated with a logistic function
+     */
+    public double phi(String url) {
+        Peer peer = peers.get(url);
+        if (peer == null) {
+            return 0;
+        }
+        double mean;
+        double deviation;
+        long last;
+        synchronized (peer) {
+            if (peer.lastHeartbeat == 0) {
+                // not answered once yet, judged from the time since it is watched
+                last = peer.since;
+                mean = interval;
+                deviation = interval / 4.0;
+            }
+            else {
+                last = peer.lastHeartbeat;
+                mean = peer.intervals.isEmpty() ? interval : peer.mean();
+                deviation = Math.max(peer.deviation(), interval / 4.0);
+            }
+        }
+        double elapsed = System.currentTimeMillis() - last;
+        double y = (elapsed - mean) / deviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        return (elapsed > mean) ? -Math.log10(e / (1.0 + e)) : -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        peers.entrySet().removeIf(e -> now - e.getValue().lastUsed > idleTimeout);
+        for (Map.Entry<String, Peer> e : peers.entrySet()) {
+            Peer peer = e.getValue();
+            // a peer that has not answered the last ping yet is not pinged twice at once
+            if (peer.pending.compareAndSet(false, true)) {
+                pings.execute(() -> ping(e.getKey(), peer));
+            }
+        }
+    }
+
+    private void ping(String url, Peer peer) {
+        try {
+            restTemplate.getForEntity(url + "/heartbeat", Void.class);
+            peer.heartbeat(System.currentTimeMillis());
+        }
+        catch (RestClientException e) {
+            metricsService.increment("failureDetector.missed");
+        }
+        finally {
+            peer.pending.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        pings.shutdownNow();
+    }
+
+    private static final class Peer {
+
+        private final long since = System.currentTimeMillis();
+        private final AtomicBoolean pending = new AtomicBoolean();
+        private final Deque<Long> intervals = new ArrayDeque<>();
+        private volatile long lastUsed;
+        private long lastHeartbeat;
+        private long sum;
+        private long sumOfSquares;
+
+        private synchronized void heartbeat(long now) {
+            if (lastHeartbeat != 0) {
+                long value = now - lastHeartbeat;
+                intervals.addLast(value);
+                sum += value;
+                sumOfSquares += value * value;
+                if (intervals.size() > WINDOW) {
+                    long removed = intervals.removeFirst();
+                    sum -= removed;
+                    sumOfSquares -= removed * removed;
+                }
+            }
+            lastHeartbeat = now;
+        }
+
+        private double mean() {
+            return (double) sum / intervals.size();
+        }
+
+        private double deviation() {
+            if (intervals.isEmpty()) {
+                return 0;
+            }
+            double mean = mean();
+            return Math.sqrt(Math.max(0, (double) sumOfSquares / intervals.size() - mean * mean));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package dds20.service;
+
+import dds20.rest.dto.InquiryPostDTO;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frame Codec
+ * Binary encoding of the protocol messages for the TCP transport. A frame is the length of the rest as an int,
+ * the kind of the message, the session and the fields of the message in a fixed order. Many sessions share one
+ * connection, so every frame carries its session.
+ */
+public final class FrameCodec {
+
+    private static final byte MESSAGE = 1;
+    private static final byte INQUIRY = 2;
+    private static final byte PAXOS = 3;
+
+    /**
+     * Receives the decoded messages
+     */
+    public interface Handler {
+
+        void receiveMessage(String session, MessagePostDTO message);
+
+        void receiveInquiry(String session, InquiryPostDTO inquiry);
+
+        void receivePaxos(String session, PaxosPostDTO message);
+    }
+
+    private FrameCodec() {
+    }
+
+    public static ByteBuffer encodeMessage(String session, MessagePostDTO message) {
+        return encodeMessage(session, message, null, null, null);
+    }
+
+    /**
+     * Encodes the message with the given sequence number and trace context instead of its own, if there are ones
+     */
+    public static ByteBuffer encodeMessage(String session, MessagePostDTO message, Long seq, Long traceId,
+                                           Long spanId) {
+        return encode(MESSAGE, session, out -> writeMessage(out, message, seq, traceId, spanId));
+    }
+
+    public static ByteBuffer encodeInquiry(String session, InquiryPostDTO inquiry) {
+        return encode(INQUIRY, session, out -> {
+            out.writeInt(inquiry.getTransId());
+            writeString(out, inquiry.getSender());
+            writeLong(out, inquiry.getTraceId());
+            writeLong(out, inquiry.getSpanId());
+        });
+    }
+
+    public static ByteBuffer encodePaxos(String session, PaxosPostDTO message) {
+        return encode(PAXOS, session, out -> {
+            writeString(out, message.getPhase());
+            writeString(out, message.getSender());
+            writeString(out, message.getAcceptor());
+            writeLong(out, message.getInstance());
+            writeLong(out, message.getBallot());
+            writeLong(out, message.getAccepted());
+            writeString(out, message.getValue());
+        });
+    }
+
+    /**
+     * Decodes one frame without its length and passes the message to the handler
+     */
+    public static void decode(byte[] frame, Handler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        byte kind = in.readByte();
+        String session = in.readUTF();
+        switch (kind) {
+            case MESSAGE:
+                handler.receiveMessage(session, readMessage(in));
+                break;
+            case INQUIRY:
+                InquiryPostDTO inquiry = new InquiryPostDTO();
+                inquiry.setTransId(in.readInt());
+                inquiry.setSender(readString(in));
+                inquiry.setTraceId(readLong(in));
+                inquiry.setSpanId(readLong(in));
+                handler.receiveInquiry(session, inquiry);
+                break;
+            case PAXOS:
+                PaxosPostDTO paxos = new PaxosPostDTO();
+                paxos.setPhase(readString(in));
+                paxos.setSender(readString(in));
+                paxos.setAcceptor(readString(in));
+                paxos.setInstance(readLong(in));
+                paxos.setBallot(readLong(in));
+                paxos.setAccepted(readLong(in));
+                paxos.setValue(readString(in));
+                handler.receivePaxos(session, paxos);
+                break;
+            default:
+                throw new IOException("Unknown frame kind " + kind);
+        }
+    }
+
+    private static ByteBuffer encode(byte kind, String session, Writer body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            out.writeByte(kind);
+            out.writeUTF(session);
+            body.write(out);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.limit() - Integer.BYTES);
+        return frame;
+    }
+
+    private static void writeMessage(DataOutputStream out, MessagePostDTO message, Long seq, Long traceId,
+                                     Long spanId) throws IOException {
+        writeString(out, message.getMessage());
+        writeString(out, message.getNode());
+        writeInteger(out, message.getTransId());
+        writeLong(out, (seq != null) ? seq : message.getSeq());
+        writeString(out, message.getCoordinator());
+        writeString(out, message.getSession());
+        writeLong(out, (traceId != null) ? traceId : message.getTraceId());
+        writeLong(out, (traceId != null) ? spanId : message.getSpanId());
+        writeStrings(out, message.getChain());
+        writeStrings(out, message.getAcceptors());
+        writeLong(out, message.getInstance());
+        List<MessagePostDTO> piggyback = message.getPiggyback();
+        out.writeInt((piggyback != null) ? piggyback.size() : -1);
+        if (piggyback != null) {
+            for (MessagePostDTO p : piggyback) {
+                writeMessage(out, p, null, null, null);
+            }
+        }
+    }
+
+    private static MessagePostDTO readMessage(DataInputStream in) throws IOException {
+        MessagePostDTO message = new MessagePostDTO();
+        message.setMessage(readString(in));
+        message.setNode(readString(in));
+        message.setTransId(readInteger(in));
+        message.setSeq(readLong(in));
+        message.setCoordinator(readString(in));
+        message.setSession(readString(in));
+        message.setTraceId(readLong(in));
+        message.setSpanId(readLong(in));
+        message.setChain(readStrings(in));
+        message.setAcceptors(readStrings(in));
+        message.setInstance(readLong(in));
+        int size = in.readInt();
+        if (size >= 0) {
+            List<MessagePostDTO> piggyback = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                piggyback.add(readMessage(in));
+            }
+            message.setPiggyback(piggyback);
+        }
+        return message;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt((values != null) ? values.size() : -1);
+        if (values != null) {
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private interface Writer {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,88 @@
+package dds20.service;
+
+import dds20.entity.Data;
+import dds20.exceptions.OverloadedException;
+import dds20.rest.dto.InquiryPostDTO;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
+import dds20.rest.mapper.DTOMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Inbox Service
+ * This class takes the protocol messages of other nodes, whether they came over HTTP or over the TCP transport,
+ * and hands them to the DataService.
+ */
+@Service
+public class InboxService implements FrameCodec.Handler {
+
+    private final DataService dataService;
+    private final NodeService nodeService;
+    private final PeerService peerService;
+    private final OutboxService outboxService;
+    private final ShardRouter shardRouter;
+
+    @Autowired
+    public InboxService(DataService dataService, NodeService nodeService, PeerService peerService,
+                        OutboxService outboxService, ShardRouter shardRouter) {
+        this.dataService = dataService;
+        this.nodeService = nodeService;
+        this.peerService = peerService;
+        this.outboxService = outboxService;
+        this.shardRouter = shardRouter;
+    }
+
+    @Override
+    public void receiveMessage(String session, MessagePostDTO messagePostDTO) {
+        // piggybacked messages first, so a full mailbox of this session does not cost the other sessions
+        if (messagePostDTO.getPiggyback() != null) {
+            for (MessagePostDTO piggyback : messagePostDTO.getPiggyback()) {
+                try {
+                    receivePiggyback(piggyback);
+                }
+                catch (OverloadedException e) {
+                    // shed like a lost message, the protocol timers recover it
+                }
+            }
+        }
+        if (nodeService.isActive(session)) {
+            receive(session, messagePostDTO);
+        }
+    }
+
+    private void receivePiggyback(MessagePostDTO messagePostDTO) {
+        String session = messagePostDTO.getSession();
+        String instance = shardRouter.getInstance(session);
+        if (instance != null) {
+            // the session lives on another instance, pass the message on with the next request there
+            outboxService.defer(instance, session, messagePostDTO, null, null, null);
+        }
+        else if (nodeService.isActive(session)) {
+            receive(session, messagePostDTO);
+        }
+    }
+
+    private void receive(String session, MessagePostDTO messagePostDTO) {
+        Data data = DTOMapper.INSTANCE.convertMessagePostDTOtoEntity(messagePostDTO);
+        data.setSession(session);
+        data.setPeer(peerService.getId(messagePostDTO.getNode()));
+        dataService.receiveMessage(session, data);
+    }
+
+    @Override
+    public void receiveInquiry(String session, InquiryPostDTO inquiryPostDTO) {
+        if (nodeService.isActive(session)) {
+            dataService.handleInquiry(session, inquiryPostDTO.getSender(), inquiryPostDTO.getTransId(),
+                    inquiryPostDTO.getSpanId());
+        }
+    }
+
+    /**
+     * Paxos Commit messages, also answered by servers that take part as acceptor only
+     */
+    @Override
+    public void receivePaxos(String session, PaxosPostDTO paxosPostDTO) {
+        dataService.handlePaxos(session, paxosPostDTO);
+    }
+}
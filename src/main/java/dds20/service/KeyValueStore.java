@@ -0,0 +1,197 @@
+package dds20.service;
+
+import dds20.entity.KeyValue;
+import dds20.repository.KeyValueRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Key-Value Store
+ * This class is the embedded participant of the server. A transaction stages the writes it wants to make,
+ * the PREPARE locks their keys and the decision applies or drops them and releases the locks.
+ * The lock table maps a key to the session holding it and is only changed with compare-and-set, a key
+ * that is already locked is a conflict and the session votes NO instead of waiting. Waiting for a lock
+ * held by another distributed transaction could deadlock across nodes.
+ * The writes of a prepared transaction are stored with the PREPARE record and the committed values in the
+ * same table, so a restarted server takes the locks of its prepared transactions again.
+ * Values and locks are local to the server, so the store is refused when several instances share the sessions:
+ * two sessions writing the same key on different instances would not see each other's lock.
+ */
+@Service
+public class KeyValueStore implements Participant {
+
+    private final MetricsService metricsService;
+    private final ShardRouter shardRouter;
+    private final KeyValueRepository keyValueRepository;
+    private final TransactionTemplate newTransaction;
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> locks = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> writes = new ConcurrentHashMap<>();
+    private final Set<String> prepared = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public KeyValueStore(MetricsService metricsService, ShardRouter shardRouter,
+                         @Qualifier("keyValueRepository") KeyValueRepository keyValueRepository,
+                         PlatformTransactionManager transactionManager) {
+        this.metricsService = metricsService;
+        this.shardRouter = shardRouter;
+        this.keyValueRepository = keyValueRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        load();
+        metricsService.registerGauge("kv.keys", values::size);
+        metricsService.registerGauge("kv.locks", locks::size);
+    }
+
+    /**
+     * Reads the committed values and locks the keys of the transactions that were prepared before a restart
+     */
+    private void load() {
+        for (KeyValue row : keyValueRepository.findAll()) {
+            if (row.getSession() == null) {
+                values.put(row.getKey(), row.getValue());
+            }
+            else {
+                writes.computeIfAbsent(row.getSession(), k -> new HashMap<>()).put(row.getKey(), row.getValue());
+                locks.put(row.getKey(), row.getSession());
+                prepared.add(row.getSession());
+            }
+        }
+    }
+
+    public String get(String key) {
+        checkSingleInstance();
+        return values.get(key);
+    }
+
+    /**
+     * Adds writes to the transaction of the session, they are neither locked nor visible before the PREPARE
+     * They are staged on the session's shard like the PREPARE, so no write slips in after the keys were locked
+     */
+    public CompletableFuture<Void> stage(String session, Map<String, String> newWrites) {
+        checkSingleInstance();
+        CompletableFuture<Void> staged = new CompletableFuture<>();
+        shardRouter.getShard(session).execute(() -> {
+            if (prepared.contains(session)) {
+                staged.completeExceptionally(
+                        new IllegalStateException("The transaction of session " + session + " is already prepared"));
+                return;
+            }
+            writes.computeIfAbsent(session, k -> new HashMap<>()).putAll(newWrites);
+            staged.complete(null);
+        });
+        return staged;
+    }
+
+    /**
+     * Locks all keys the session writes, on a conflict the keys taken so far are released again
+     * The writes are stored in the caller's transaction, the one that writes the PREPARE record. If it rolls
+     * back, the locks are released and the session is not prepared.
+     */
+    @Override
+    public boolean prepare(String session) {
+        Map<String, String> staged = writes.get(session);
+        if (staged == null || prepared.contains(session)) {
+            return true;
+        }
+        List<String> taken = new ArrayList<>();
+        for (String key : staged.keySet()) {
+            String holder = locks.putIfAbsent(key, session);
+            if (holder != null && !holder.equals(session)) {
+                release(session, taken);
+                metricsService.increment("kv.conflicts");
+                return false;
+            }
+            taken.add(key);
+        }
+        List<KeyValue> rows = new ArrayList<>();
+        for (Map.Entry<String, String> write : staged.entrySet()) {
+            KeyValue row = new KeyValue();
+            row.setSession(session);
+            row.setKey(write.getKey());
+            row.setValue(write.getValue());
+            rows.add(row);
+        }
+        keyValueRepository.saveAll(rows);
+        prepared.add(session);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        prepared.remove(session);
+                        release(session, taken);
+                    }
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Called after the COMMIT record is committed, in a transaction of its own
+     */
+    @Override
+    public void commit(String session) {
+        Map<String, String> staged = writes.remove(session);
+        if (staged == null) {
+            return;
+        }
+        if (prepared.remove(session)) {
+            newTransaction.execute(status -> {
+                keyValueRepository.deleteCommitted(staged.keySet());
+                return keyValueRepository.commitSession(session);
+            });
+            values.putAll(staged);
+            metricsService.increment("kv.commits");
+        }
+        release(session, staged.keySet());
+    }
+
+    @Override
+    public void abort(String session) {
+        Map<String, String> staged = writes.remove(session);
+        if (staged == null) {
+            return;
+        }
+        if (prepared.remove(session)) {
+            newTransaction.execute(status -> keyValueRepository.deleteAllBySession(session));
+            metricsService.increment("kv.aborts");
+        }
+        release(session, staged.keySet());
+    }
+
+    @Override
+    public Collection<String> getPrepared() {
+        return new ArrayList<>(prepared);
+    }
+
+    private void checkSingleInstance() {
+        if (shardRouter.isDistributed()) {
+            throw new IllegalStateException(
+                    "The key-value store is local to one instance, dds20.sharding.instances is set");
+        }
+    }
+
+    private void release(String session, Collection<String> keys) {
+        for (String key : keys) {
+            locks.remove(key, session);
+        }
+    }
+}
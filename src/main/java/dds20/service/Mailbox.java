@@ -0,0 +1,62 @@
+package dds20.service;
+
+import dds20.entity.Data;
+import dds20.entity.Opcode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Mailbox
+ * Messages of one session waiting for the shard. Votes, decisions and ACKs finish a transaction that already
+ * holds locks and timers, so they are taken before a PREPARE or ONE_PHASE that starts new work. A new-work
+ * message that waited longer than the maximum delay is taken first, so it is not starved by the others.
+ * Owned by the session's shard like the rest of the session state.
+ */
+public class Mailbox {
+
+    private final Deque<Data> urgent = new ArrayDeque<>();
+    private final Deque<Data> newWork = new ArrayDeque<>();
+
+    public static boolean isNewWork(Opcode msg) {
+        return msg == Opcode.PREPARE || msg == Opcode.ONE_PHASE;
+    }
+
+    public void add(Data data) {
+        (isNewWork(data.getOpcode()) ? newWork : urgent).addLast(data);
+    }
+
+    /**
+     * Takes the next message, null if the mailbox is empty
+     * The receive time of the messages is compared with now, both in microseconds
+     */
+    public Data poll(long now, long maxDelay) {
+        if (isOverdue(now, maxDelay) || urgent.isEmpty()) {
+            return newWork.pollFirst();
+        }
+        return urgent.pollFirst();
+    }
+
+    /**
+     * Whether the next message finishes a transaction or is a new-work message that waited too long
+     */
+    public boolean isUrgent(long now, long maxDelay) {
+        return !urgent.isEmpty() || isOverdue(now, maxDelay);
+    }
+
+    /**
+     * Whether the oldest new-work message waited longer than the maximum delay
+     */
+    public boolean isOverdue(long now, long maxDelay) {
+        Data oldest = newWork.peekFirst();
+        return oldest != null && oldest.getTimeMicros() != null && now - oldest.getTimeMicros() > maxDelay;
+    }
+
+    public boolean isEmpty() {
+        return urgent.isEmpty() && newWork.isEmpty();
+    }
+
+    public int size() {
+        return urgent.size() + newWork.size();
+    }
+}
@@ -0,0 +1,54 @@
+package dds20.service;
+
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics Service
+ * This class collects counters and gauges of the server, they are exposed by the /metrics endpoint.
+ */
+@Service
+public class MetricsService {
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public MetricsService() {
+        // CPU time of the whole process, the transport benchmark divides the messages by it
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            registerGauge("process.cpuMillis",
+                    () -> ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() / 1_000_000);
+        }
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long value) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(value);
+    }
+
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            metrics.put(e.getKey(), e.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+            metrics.put(e.getKey(), e.getValue().getAsLong());
+        }
+        return metrics;
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.lang.reflect.Array;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -49,8 +50,19 @@ public class NodeService {
         nodeRepository.saveAndFlush(newNode);
     }
 
-    public void clearNode(String session) {
-        this.nodeRepository.deleteBySession(session);
-        this.nodeRepository.flush();
+    /**
+     * Saves many nodes without a flush per node, so the inserts go out in JDBC batches
+     */
+    public void saveNodes(Collection<Node> newNodes) {
+        nodeRepository.saveAll(newNodes);
+    }
+
+    /**
+     * Removes the nodes of all given sessions with set-based deletes
+     */
+    public void clearNodes(Collection<String> sessions) {
+        this.nodeRepository.deleteSubordinatesBySessionIn(sessions);
+        this.nodeRepository.deleteAcceptorsBySessionIn(sessions);
+        this.nodeRepository.deleteAllBySessionIn(sessions);
     }
 }
@@ -0,0 +1,229 @@
+package dds20.service;
+
+import dds20.rest.dto.InquiryPostDTO;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Outbox Service
+ * This class sends protocol messages to other nodes. YES votes and ACKs are not sent on their own: they wait
+ * in a per-peer outbox and ride along with the next message to that peer, of any session. If no such
+ * message is sent within the piggyback delay, the outbox is flushed as one request.
+ * With the TCP transport the requests are written as frames to the TcpService instead of posted over HTTP.
+ */
+@Service
+public class OutboxService implements Transport {
+
+    static final HttpHeaders JSON_HEADERS = jsonHeaders();
+    public static final String TRACE_HEADER = "X-DDS20-Trace";
+    public static final String SPAN_HEADER = "X-DDS20-Span";
+    public static final String SEQ_HEADER = "X-DDS20-Seq";
+
+    private final RestTemplate restTemplate;
+    private final MetricsService metricsService;
+    private final TcpService tcpService;
+
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${dds20.piggyback.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dds20.piggyback.delay:50}")
+    private long delay;
+
+    @Autowired
+    public OutboxService(RestTemplate restTemplate, MetricsService metricsService, TcpService tcpService) {
+        this.restTemplate = restTemplate;
+        this.metricsService = metricsService;
+        this.tcpService = tcpService;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sends the message at once, together with everything waiting in the recipient's outbox
+     */
+    @Override
+    public void send(String recipient, String session, HttpEntity<MessagePostDTO> request, Long seq, Long traceId,
+                     Long spanId) {
+        List<MessagePostDTO> pending = drain(recipient);
+        if (!pending.isEmpty()) {
+            MessagePostDTO message = copy(request.getBody(), null);
+            message.setPiggyback(pending);
+            request = new HttpEntity<>(message, JSON_HEADERS);
+        }
+        post(recipient, session, request, seq, traceId, spanId, pending.size());
+    }
+
+    /**
+     * Queues the message for the recipient, it is sent with the next message or after the piggyback delay
+     */
+    @Override
+    public void defer(String recipient, String session, MessagePostDTO message, Long seq, Long traceId, Long spanId) {
+        Outbox outbox = outboxes.computeIfAbsent(recipient, k -> new Outbox());
+        MessagePostDTO copy = copy(message, session);
+        // a piggybacked message carries its sequence number and trace context in the body
+        if (seq != null) {
+            copy.setSeq(seq);
+        }
+        if (traceId != null) {
+            copy.setTraceId(traceId);
+            copy.setSpanId(spanId);
+        }
+        outbox.messages.add(copy);
+        if (outbox.flushScheduled.compareAndSet(false, true)) {
+            flusher.schedule(() -> flush(recipient), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(String recipient) {
+        List<MessagePostDTO> pending = drain(recipient);
+        if (pending.isEmpty()) {
+            return;
+        }
+        MessagePostDTO message = pending.remove(0);
+        if (!pending.isEmpty()) {
+            message.setPiggyback(pending);
+        }
+        post(recipient, message.getSession(), new HttpEntity<>(message, JSON_HEADERS), null, null, null,
+                pending.size());
+    }
+
+    private List<MessagePostDTO> drain(String recipient) {
+        List<MessagePostDTO> pending = new ArrayList<>();
+        Outbox outbox = outboxes.get(recipient);
+        if (outbox != null) {
+            // cleared before draining, so a message added meanwhile schedules its own flush
+            outbox.flushScheduled.set(false);
+            MessagePostDTO message;
+            while ((message = outbox.messages.poll()) != null) {
+                pending.add(message);
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public void sendInquiry(String recipient, String session, HttpEntity<InquiryPostDTO> request) {
+        metricsService.increment("messages.requests");
+        if (tcpService.isEnabled()) {
+            tcpService.send(recipient, FrameCodec.encodeInquiry(session, request.getBody()));
+            return;
+        }
+        try {
+            restTemplate.exchange(recipient + "/inquiry?session={session}", HttpMethod.POST, request, Void.class, session);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void sendPaxos(String recipient, String session, PaxosPostDTO message) {
+        metricsService.increment("messages.requests");
+        if (tcpService.isEnabled()) {
+            tcpService.send(recipient, FrameCodec.encodePaxos(session, message));
+            return;
+        }
+        try {
+            restTemplate.exchange(recipient + "/paxos?session={session}", HttpMethod.POST,
+                    new HttpEntity<>(message, JSON_HEADERS), Void.class, session);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The sequence number and the trace context are added to the headers of the outgoing request, the entity
+     * itself is not copied
+     */
+    private void post(String recipient, String session, HttpEntity<MessagePostDTO> request, Long seq, Long traceId,
+                      Long spanId, int piggybacked) {
+        metricsService.increment("messages.requests");
+        metricsService.add("messages.piggybacked", piggybacked);
+        if (tcpService.isEnabled()) {
+            tcpService.send(recipient, FrameCodec.encodeMessage(session, request.getBody(), seq, traceId, spanId));
+            return;
+        }
+        RequestCallback entityCallback = restTemplate.httpEntityCallback(request);
+        RequestCallback callback = (seq == null && traceId == null) ? entityCallback : r -> {
+            if (seq != null) {
+                r.getHeaders().set(SEQ_HEADER, seq.toString());
+            }
+            if (traceId != null) {
+                r.getHeaders().set(TRACE_HEADER, traceId.toString());
+                r.getHeaders().set(SPAN_HEADER, String.valueOf(spanId));
+            }
+            entityCallback.doWithRequest(r);
+        };
+        try {
+            restTemplate.execute(recipient + "/message?session={session}", HttpMethod.POST, callback, null, session);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    static MessagePostDTO copy(MessagePostDTO message, String session) {
+        MessagePostDTO copy = new MessagePostDTO();
+        copy.setMessage(message.getMessage());
+        copy.setNode(message.getNode());
+        copy.setCoordinator(message.getCoordinator());
+        copy.setTransId(message.getTransId());
+        copy.setSeq(message.getSeq());
+        copy.setTraceId(message.getTraceId());
+        copy.setSpanId(message.getSpanId());
+        copy.setChain(message.getChain());
+        copy.setAcceptors(message.getAcceptors());
+        copy.setInstance(message.getInstance());
+        copy.setSession(session);
+        return copy;
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return HttpHeaders.readOnlyHttpHeaders(headers);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+    }
+
+    private static final class Outbox {
+
+        private final Queue<MessagePostDTO> messages = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,31 @@
+package dds20.service;
+
+import java.util.Collection;
+
+/**
+ * Participant
+ * The resource a node coordinates in a transaction. The protocol asks it for its vote when the PREPARE
+ * arrives and hands it the outcome once the decision is recorded. A participant that votes YES must be
+ * able to do either until then, whatever it holds for the transaction stays held in the meantime, also
+ * across a restart of the server.
+ * All calls of one session come from the session's shard.
+ */
+public interface Participant {
+
+    /**
+     * Returns true to vote YES
+     */
+    boolean prepare(String session);
+
+    void commit(String session);
+
+    /**
+     * Also called for sessions that never prepared, e.g. when a session is cleared
+     */
+    void abort(String session);
+
+    /**
+     * Returns the sessions that are prepared and wait for their outcome, after a restart they are recovered
+     */
+    Collection<String> getPrepared();
+}
@@ -0,0 +1,90 @@
+package dds20.service;
+
+import dds20.entity.Peer;
+import dds20.repository.PeerRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Peer Service
+ * This class is responsible for the dictionary of node URLs. Every URL is interned once and then
+ * resolved from memory in both directions.
+ * The methods are not transactional: an unknown URL takes the lock first and is then stored in a new
+ * transaction, so a thread waiting for the lock holds no connection this service opened for it.
+ */
+@Service
+public class PeerService {
+
+    private final PeerRepository peerRepository;
+    private final TransactionTemplate newTransaction;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<Integer, String> urls = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PeerService(@Qualifier("peerRepository") PeerRepository peerRepository,
+                       PlatformTransactionManager transactionManager) {
+        this.peerRepository = peerRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Returns the id of the given URL, adds the URL to the dictionary if it is unknown
+     */
+    public Integer getId(String url) {
+        if (url == null) {
+            return null;
+        }
+        Integer id = ids.get(url);
+        return (id != null) ? id : intern(url);
+    }
+
+    public String getUrl(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        String url = urls.get(id);
+        if (url == null) {
+            Peer peer = peerRepository.findById(id).orElse(null);
+            if (peer != null) {
+                url = peer.getUrl();
+                cache(peer);
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Runs in its own transaction, so a cached id never refers to a rolled back row
+     */
+    private synchronized Integer intern(String url) {
+        Integer id = ids.get(url);
+        if (id != null) {
+            return id;
+        }
+        Peer peer = newTransaction.execute(status -> {
+            Peer existing = peerRepository.findByUrl(url);
+            if (existing != null) {
+                return existing;
+            }
+            Peer newPeer = new Peer();
+            newPeer.setUrl(url);
+            return peerRepository.saveAndFlush(newPeer);
+        });
+        cache(peer);
+        return peer.getId();
+    }
+
+    private void cache(Peer peer) {
+        urls.put(peer.getId(), peer.getUrl());
+        ids.put(peer.getUrl(), peer.getId());
+    }
+}
@@ -0,0 +1,177 @@
+package dds20.service;
+
+import dds20.entity.Opcode;
+import dds20.rest.dto.ResultGetDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Result Service
+ * This class hands out a handle for every transaction a client starts and completes its future once the
+ * decision is recorded, so clients wait for the outcome instead of polling the log. Every handle also
+ * keeps the times the transaction reached its phases. At most a fixed number of handles is kept, the oldest
+ * are dropped first and their outcome is then only found in the log.
+ * Handles count up from the start time of the server, so a handle from before a restart is never handed out again.
+ */
+@Service
+public class ResultService {
+
+    private final TracingService tracingService;
+    private final int maxSize;
+
+    private final Map<String, Handle> handles;
+    private final AtomicLong nextId;
+
+    @Autowired
+    public ResultService(TracingService tracingService, MetricsService metricsService,
+                         @Value("${dds20.result.size:10000}") int maxSize) {
+        this.tracingService = tracingService;
+        this.maxSize = maxSize;
+        this.nextId = new AtomicLong(tracingService.now());
+        this.handles = new LinkedHashMap<String, Handle>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Handle> eldest) {
+                return size() > ResultService.this.maxSize;
+            }
+        };
+        metricsService.registerGauge("result.handles", this::size);
+    }
+
+    /**
+     * Returns the handle of a new run of the session, a handle of an earlier run is replaced
+     */
+    public long open(String session) {
+        Handle handle = new Handle(nextId.incrementAndGet(), tracingService.now());
+        synchronized (handles) {
+            handles.remove(session);
+            handles.put(session, handle);
+        }
+        return handle.id;
+    }
+
+    /**
+     * The transaction left the queue and its first protocol step runs
+     */
+    public void started(String session) {
+        Handle handle = get(session);
+        if (handle != null) {
+            handle.started(tracingService.now());
+        }
+    }
+
+    /**
+     * Completes the session's future once the transaction that wrote the decision commits
+     */
+    public void recordWritten(String session, Opcode record) {
+        if (record != Opcode.COMMIT && record != Opcode.ABORT && record != Opcode.END) {
+            return;
+        }
+        Handle handle = get(session);
+        if (handle == null) {
+            return;
+        }
+        long now = tracingService.now();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            handle.recorded(record, now);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    handle.recorded(record, now);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the current result of the session, null if no client started it here
+     */
+    public ResultGetDTO getResult(String session) {
+        Handle handle = get(session);
+        return (handle != null) ? handle.toResult(session) : null;
+    }
+
+    /**
+     * Returns a future completed with the result once the run with the given handle is decided
+     * Null if the handle is not the session's current one, e.g. a newer run replaced it
+     */
+    public CompletableFuture<ResultGetDTO> awaitResult(String session, long id) {
+        Handle handle = get(session);
+        return (handle != null && handle.id == id) ? handle.decided.thenApply(h -> h.toResult(session)) : null;
+    }
+
+    public void remove(String session) {
+        synchronized (handles) {
+            handles.remove(session);
+        }
+    }
+
+    private Handle get(String session) {
+        synchronized (handles) {
+            return handles.get(session);
+        }
+    }
+
+    private long size() {
+        synchronized (handles) {
+            return handles.size();
+        }
+    }
+
+    private static final class Handle {
+
+        private final long id;
+        private final long submitted;
+        private final CompletableFuture<Handle> decided = new CompletableFuture<>();
+        private long started;
+        private long decision;
+        private long end;
+        private Opcode outcome;
+
+        private Handle(long id, long submitted) {
+            this.id = id;
+            this.submitted = submitted;
+        }
+
+        private synchronized void started(long now) {
+            started = now;
+        }
+
+        private void recorded(Opcode record, long now) {
+            synchronized (this) {
+                if (record == Opcode.END) {
+                    end = now;
+                    return;
+                }
+                if (outcome != null) {
+                    return;
+                }
+                outcome = record;
+                decision = now;
+            }
+            decided.complete(this);
+        }
+
+        private synchronized ResultGetDTO toResult(String session) {
+            ResultGetDTO result = new ResultGetDTO();
+            result.setSession(session);
+            result.setHandle(id);
+            result.setDone(outcome != null);
+            result.setOutcome((outcome != null) ? outcome.name() : null);
+            result.setQueuedMicros((started != 0) ? started - submitted : null);
+            result.setVotingMicros((started != 0 && decision != 0) ? decision - started : null);
+            result.setCompletionMicros((decision != 0 && end != 0) ? end - decision : null);
+            return result;
+        }
+    }
+}
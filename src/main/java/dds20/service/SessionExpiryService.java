@@ -0,0 +1,100 @@
+package dds20.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Session Expiry Service
+ * This class keeps all sessions ordered by their expiry time. A single sweeper removes expired sessions
+ * in batches instead of scheduling one timer thread per session.
+ */
+@Service
+public class SessionExpiryService {
+
+    private final DataService dataService;
+    private final AcceptorService acceptorService;
+
+    private final NavigableSet<Expiry> expiries = new ConcurrentSkipListSet<>();
+    private final Map<String, Expiry> sessions = new ConcurrentHashMap<>();
+
+    @Value("${dds20.session.expiry:30000}")
+    private long sessionExpiry;
+
+    @Value("${dds20.session.sweepBatchSize:500}")
+    private int batchSize;
+
+    @Autowired
+    public SessionExpiryService(DataService dataService, AcceptorService acceptorService) {
+        this.dataService = dataService;
+        this.acceptorService = acceptorService;
+    }
+
+    /**
+     * (Re)starts the expiry window of a session
+     */
+    public void startSession(String session) {
+        Expiry expiry = new Expiry(session, System.currentTimeMillis() + sessionExpiry);
+        Expiry previous = sessions.put(session, expiry);
+        if (previous != null) {
+            expiries.remove(previous);
+        }
+        expiries.add(expiry);
+    }
+
+    public void startSessions(Collection<String> sessions) {
+        for (String session : sessions) {
+            startSession(session);
+        }
+    }
+
+    /**
+     * Regularly removes all expired sessions in batches
+     */
+    @Scheduled(fixedRate = 1000)
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        List<String> batch = new ArrayList<>();
+        while (!expiries.isEmpty() && expiries.first().deadline <= now) {
+            Expiry expiry = expiries.pollFirst();
+            if (expiry != null && sessions.remove(expiry.session, expiry)) {
+                batch.add(expiry.session);
+            }
+            if (batch.size() >= batchSize) {
+                dataService.clearData(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            dataService.clearData(batch);
+        }
+        // the acceptor state of sessions that were never set up on this server expires after the same time
+        acceptorService.expire(now - sessionExpiry);
+    }
+
+    private static final class Expiry implements Comparable<Expiry> {
+
+        private final String session;
+        private final long deadline;
+
+        private Expiry(String session, long deadline) {
+            this.session = session;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Expiry other) {
+            int c = Long.compare(deadline, other.deadline);
+            return (c != 0) ? c : session.compareTo(other.session);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package dds20.service;
+
+import dds20.entity.Data;
+import dds20.entity.Event;
+import dds20.entity.Opcode;
+import dds20.rest.dto.InquiryPostDTO;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
+import org.springframework.http.HttpEntity;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Session State
+ * In-memory protocol state of one session. It is owned by the session's shard and must only be
+ * accessed from the shard's thread.
+ */
+public class SessionState {
+
+    private final String session;
+
+    private final Mailbox messages = new Mailbox();
+    private Map<String, Opcode> votes;
+    private Set<String> acksNeeded;
+    private Set<String> acksReceived;
+    private final Map<Integer, Set<Long>> received = new HashMap<>();
+    // the decision each sender sent in the current run of the session, a run starts with a PREPARE
+    private final Map<Integer, Opcode> decisions = new HashMap<>();
+    private ScheduledFuture<?> timer;
+    private Event timerEvent;
+    private boolean ackParent;
+    private boolean onePhase;
+    private Long traceId;
+    private Long sendSpan;
+
+    // the own Paxos round on the decision, ballot 0 is the coordinator's round without phase 1
+    private Long ballot;
+    private long highestBallot;
+    private Opcode proposal;
+    private final Map<String, PaxosPostDTO> promises = new HashMap<>();
+    private final Set<String> accepts = new HashSet<>();
+
+    private final Map<Opcode, HttpEntity<MessagePostDTO>> messageRequests = new EnumMap<>(Opcode.class);
+    private HttpEntity<InquiryPostDTO> inquiryRequest;
+
+    public SessionState(String session) {
+        this.session = session;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public Mailbox getMessages() {
+        return messages;
+    }
+
+    /**
+     * Votes are only created with the first vote, so sessions without votes are skipped by allVotes
+     */
+    public Map<String, Opcode> getVotes() {
+        return votes;
+    }
+
+    public Map<String, Opcode> initVotes() {
+        if (votes == null) {
+            votes = new HashMap<>();
+        }
+        return votes;
+    }
+
+    public Set<String> getAcksNeeded() {
+        return acksNeeded;
+    }
+
+    public Set<String> getAcksReceived() {
+        return acksReceived;
+    }
+
+    public void initAcks() {
+        if (acksNeeded == null) {
+            acksNeeded = new LinkedHashSet<>();
+        }
+        if (acksReceived == null) {
+            acksReceived = new LinkedHashSet<>();
+        }
+    }
+
+    /**
+     * Remembers a received message by (sender, sequence number of the send)
+     * Returns false if the same send was already received, i.e. it was delivered twice
+     * A message without a sequence number or a known sender cannot be told apart and is always taken
+     */
+    public boolean markReceived(Data data) {
+        if (data.getSeq() == null || data.getPeer() == null) {
+            return true;
+        }
+        return received.computeIfAbsent(data.getPeer(), k -> new HashSet<>()).add(data.getSeq());
+    }
+
+    /**
+     * A PREPARE starts a new run of the session, the decisions received in the last one no longer count
+     */
+    public void startRun() {
+        decisions.clear();
+    }
+
+    /**
+     * Returns true if the sender already sent this decision in the current run, e.g. it is resent by a recovery
+     */
+    public boolean isDecided(Data data) {
+        return data.getPeer() != null && data.getOpcode() == decisions.get(data.getPeer());
+    }
+
+    public void markDecided(Integer peer, Opcode decision) {
+        if (peer != null) {
+            decisions.put(peer, decision);
+        }
+    }
+
+    /**
+     * Set on an intermediate coordinator that still owes its parent an ACK
+     */
+    public boolean isAckParent() {
+        return ackParent;
+    }
+
+    public void setAckParent(boolean ackParent) {
+        this.ackParent = ackParent;
+    }
+
+    public Long getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(Long traceId) {
+        this.traceId = traceId;
+    }
+
+    /**
+     * The span of the last send entry, it is handed to the message sent right after the entry
+     */
+    public void setSendSpan(Long sendSpan) {
+        this.sendSpan = sendSpan;
+    }
+
+    public Long takeSendSpan() {
+        Long span = sendSpan;
+        sendSpan = null;
+        return span;
+    }
+
+    public void setTimer(ScheduledFuture<?> timer) {
+        cancelTimer();
+        this.timer = timer;
+    }
+
+    public void cancelTimer() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        timerEvent = null;
+    }
+
+    /**
+     * The event the pending timer logs when it expires, null for other timers
+     */
+    public Event getTimerEvent() {
+        return timerEvent;
+    }
+
+    public void setTimerEvent(Event timerEvent) {
+        this.timerEvent = timerEvent;
+    }
+
+    public boolean isOnePhase() {
+        return onePhase;
+    }
+
+    /**
+     * Set on an intermediate coordinator whose parent handed it the decision with ONE_PHASE
+     */
+    public void setOnePhase(boolean onePhase) {
+        this.onePhase = onePhase;
+    }
+
+    public Map<Opcode, HttpEntity<MessagePostDTO>> getMessageRequests() {
+        return messageRequests;
+    }
+
+    public HttpEntity<InquiryPostDTO> getInquiryRequest() {
+        return inquiryRequest;
+    }
+
+    public void setInquiryRequest(HttpEntity<InquiryPostDTO> inquiryRequest) {
+        this.inquiryRequest = inquiryRequest;
+    }
+
+    /**
+     * Starts a new round, the answers of earlier rounds no longer count
+     */
+    public void startRound(long ballot, Opcode proposal) {
+        this.ballot = ballot;
+        this.proposal = proposal;
+        highestBallot = Math.max(highestBallot, ballot);
+        promises.clear();
+        accepts.clear();
+    }
+
+    public Long getBallot() {
+        return ballot;
+    }
+
+    /**
+     * The highest ballot seen in this session, a new round has to go above it
+     */
+    public long getHighestBallot() {
+        return highestBallot;
+    }
+
+    public void setHighestBallot(long highestBallot) {
+        this.highestBallot = Math.max(this.highestBallot, highestBallot);
+    }
+
+    public Opcode getProposal() {
+        return proposal;
+    }
+
+    public void setProposal(Opcode proposal) {
+        this.proposal = proposal;
+    }
+
+    public Map<String, PaxosPostDTO> getPromises() {
+        return promises;
+    }
+
+    public Set<String> getAccepts() {
+        return accepts;
+    }
+}
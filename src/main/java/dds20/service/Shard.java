@@ -0,0 +1,95 @@
+package dds20.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shard
+ * A worker that owns the state of all sessions hashed onto it. Every task of a shard runs on the
+ * shard's single thread, so the session state needs no locks and shards do not contend with each other.
+ */
+public class Shard {
+
+    private final Logger log = LoggerFactory.getLogger(Shard.class);
+
+    private final int id;
+    private final ScheduledExecutorService executor;
+    private final Map<String, SessionState> sessions = new HashMap<>();
+
+    public Shard(int id) {
+        this(id, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shard-" + id);
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * The executor must run the tasks one at a time, e.g. the virtual time executor of the simulation
+     */
+    public Shard(int id, ScheduledExecutorService executor) {
+        this.id = id;
+        this.executor = executor;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return "shard-" + id;
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(guard(task));
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, long ms) {
+        return executor.schedule(guard(task), ms, TimeUnit.MILLISECONDS);
+    }
+
+    public void scheduleAtFixedRate(Runnable task, long ms) {
+        executor.scheduleAtFixedRate(guard(task), ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    public SessionState getSession(String session) {
+        return sessions.computeIfAbsent(session, SessionState::new);
+    }
+
+    public Collection<SessionState> getSessions() {
+        return sessions.values();
+    }
+
+    public void removeSession(String session) {
+        SessionState state = sessions.remove(session);
+        if (state != null) {
+            state.cancelTimer();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A failing task must neither kill the shard thread nor cancel a periodic task
+     */
+    private Runnable guard(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            }
+            catch (Exception e) {
+                log.error("Task on {} failed", getName(), e);
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package dds20.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Shard Router
+ * This class maps sessions onto the local shards and, if several server instances are configured,
+ * onto the instance that owns the session. Both mappings use consistent hashing.
+ */
+@Service
+public class ShardRouter {
+
+    private static final int virtualNodes = 64;
+
+    private final List<Shard> shards;
+    private final ConsistentHash<Shard> localRing;
+    private final ConsistentHash<String> instanceRing;
+    private final String self;
+
+    @Autowired
+    public ShardRouter(@Value("${dds20.sharding.shards:4}") int shardCount,
+                       @Value("${dds20.sharding.instances:}") String instances,
+                       @Value("${dds20.sharding.self:}") String self) {
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new Shard(i));
+        }
+        this.shards = Collections.unmodifiableList(shards);
+        this.localRing = new ConsistentHash<>(shards, Shard::getName, virtualNodes);
+
+        List<String> members = Arrays.stream(instances.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+        this.instanceRing = members.isEmpty() ? null : new ConsistentHash<>(members, s -> s, virtualNodes);
+        this.self = self;
+    }
+
+    /**
+     * A router over the given shards of a single instance
+     */
+    public ShardRouter(List<Shard> shards) {
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.localRing = new ConsistentHash<>(this.shards, Shard::getName, virtualNodes);
+        this.instanceRing = null;
+        this.self = null;
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public Shard getShard(String session) {
+        return localRing.get(session);
+    }
+
+    /**
+     * Returns true if several server instances share the sessions
+     */
+    public boolean isDistributed() {
+        return instanceRing != null;
+    }
+
+    /**
+     * Returns the base URL of the instance owning the session, or null if it is owned by this instance
+     */
+    public String getInstance(String session) {
+        if (instanceRing == null) {
+            return null;
+        }
+        String instance = instanceRing.get(session);
+        return instance.equals(self) ? null : instance;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package dds20.service;
+
+import dds20.rest.dto.InquiryPostDTO;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TCP Server
+ * This class accepts the connections of the other nodes' TcpService on the HTTP port plus the port offset.
+ * One selector thread reads the frames of all connections, the workers decode them and hand them to the
+ * InboxService like the REST controller does. Frames of sessions owned by another instance are passed on.
+ */
+@Service
+public class TcpServer implements FrameCodec.Handler {
+
+    private static final int MAX_FRAME = 1 << 20;
+
+    private final InboxService inboxService;
+    private final TcpService tcpService;
+    private final ShardRouter shardRouter;
+    private final MetricsService metricsService;
+    private final boolean enabled;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers;
+    private final Thread thread;
+
+    @Autowired
+    public TcpServer(InboxService inboxService, TcpService tcpService, ShardRouter shardRouter,
+                     MetricsService metricsService,
+                     @Value("${dds20.tcp.enabled:false}") boolean enabled,
+                     @Value("${server.port:8080}") int serverPort,
+                     @Value("${dds20.tcp.portOffset:1000}") int portOffset,
+                     @Value("${dds20.tcp.workers:4}") int workers) {
+        this.inboxService = inboxService;
+        this.tcpService = tcpService;
+        this.shardRouter = shardRouter;
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        if (!enabled) {
+            selector = null;
+            server = null;
+            this.workers = null;
+            thread = null;
+            return;
+        }
+        try {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(serverPort + portOffset));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.workers = Executors.newFixedThreadPool(workers, r -> {
+            Thread worker = new Thread(r, "tcp-worker");
+            worker.setDaemon(true);
+            return worker;
+        });
+        thread = new Thread(this::run, "tcp-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        accept();
+                    }
+                    else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+            }
+            catch (ClosedSelectorException e) {
+                return;
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(64 * 1024));
+        metricsService.increment("tcp.accepted");
+    }
+
+    /**
+     * Reads what arrived and dispatches every complete frame, the rest waits in the connection's buffer
+     */
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        try {
+            if (channel.read(buffer) < 0) {
+                close(key);
+                return;
+            }
+            buffer.flip();
+            while (buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt(buffer.position());
+                if (length <= 0 || length > MAX_FRAME) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                if (buffer.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                buffer.position(buffer.position() + Integer.BYTES);
+                byte[] frame = new byte[length];
+                buffer.get(frame);
+                workers.execute(() -> dispatch(frame));
+            }
+            buffer.compact();
+            // a frame larger than the buffer needs a larger one
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_FRAME + Integer.BYTES));
+                buffer.flip();
+                larger.put(buffer);
+                key.attach(larger);
+            }
+        }
+        catch (IOException e) {
+            close(key);
+        }
+    }
+
+    private void dispatch(byte[] frame) {
+        try {
+            FrameCodec.decode(frame, this);
+            metricsService.increment("tcp.received");
+        }
+        catch (IOException | RuntimeException e) {
+            // over HTTP this is an error response, which the sender ignores as well
+            metricsService.increment("tcp.rejected");
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        }
+        catch (IOException e) {
+            // closed anyway
+        }
+    }
+
+    @Override
+    public void receiveMessage(String session, MessagePostDTO message) {
+        String instance = shardRouter.getInstance(session);
+        if (instance != null) {
+            // with the piggybacked messages, the instance passes on those that are not its own
+            tcpService.send(instance, FrameCodec.encodeMessage(session, message));
+        }
+        else {
+            inboxService.receiveMessage(session, message);
+        }
+    }
+
+    @Override
+    public void receiveInquiry(String session, InquiryPostDTO inquiry) {
+        String instance = shardRouter.getInstance(session);
+        if (instance != null) {
+            tcpService.send(instance, FrameCodec.encodeInquiry(session, inquiry));
+        }
+        else {
+            inboxService.receiveInquiry(session, inquiry);
+        }
+    }
+
+    @Override
+    public void receivePaxos(String session, PaxosPostDTO message) {
+        String instance = shardRouter.getInstance(session);
+        if (instance != null) {
+            tcpService.send(instance, FrameCodec.encodePaxos(session, message));
+        }
+        else {
+            inboxService.receivePaxos(session, message);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        thread.interrupt();
+        workers.shutdownNow();
+        try {
+            selector.close();
+            server.close();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
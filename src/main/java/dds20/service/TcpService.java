@@ -0,0 +1,295 @@
+package dds20.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP Service
+ * This class keeps one long-lived connection to every node it sends to and writes the frames of all sessions
+ * to it, so a protocol message costs a few bytes on an open socket instead of an HTTP request. A node listens
+ * on its HTTP port plus the port offset. A broken connection is opened again with the next frame after the
+ * reconnect delay, the frames that were waiting on it are dropped like lost messages.
+ */
+@Service
+public class TcpService {
+
+    private static final int MAX_GATHER = 256;
+
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final int portOffset;
+    private final long reconnectDelay;
+    private final int maxQueue;
+
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Selector selector;
+    private final Thread thread;
+
+    @Autowired
+    public TcpService(MetricsService metricsService,
+                      @Value("${dds20.tcp.enabled:false}") boolean enabled,
+                      @Value("${dds20.tcp.portOffset:1000}") int portOffset,
+                      @Value("${dds20.tcp.reconnectDelay:1000}") long reconnectDelay,
+                      @Value("${dds20.tcp.maxQueue:10000}") int maxQueue) {
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.portOffset = portOffset;
+        this.reconnectDelay = reconnectDelay;
+        this.maxQueue = maxQueue;
+        if (enabled) {
+            try {
+                selector = Selector.open();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            thread = new Thread(this::run, "tcp-client");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        else {
+            selector = null;
+            thread = null;
+        }
+        metricsService.registerGauge("tcp.connections",
+                () -> connections.values().stream().filter(c -> c.connected).count());
+        metricsService.registerGauge("tcp.queued",
+                () -> connections.values().stream().mapToLong(c -> c.queued.get()).sum());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the frame for the node, the frame must not be shared with another send
+     * Returns false if it was dropped because too many frames wait for the node already
+     */
+    public boolean send(String recipient, ByteBuffer frame) {
+        Connection connection = connections.computeIfAbsent(recipient, Connection::new);
+        if (connection.queued.incrementAndGet() > maxQueue) {
+            connection.queued.decrementAndGet();
+            metricsService.increment("tcp.dropped");
+            return false;
+        }
+        connection.frames.add(frame);
+        if (connection.signalled.compareAndSet(false, true)) {
+            ready.add(connection);
+            // one wakeup per round of the selector, however many threads send meanwhile
+            if (wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+        return true;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // cleared before the ready connections are taken, so a later send wakes the selector up
+                wakeupPending.set(false);
+                Connection connection;
+                while ((connection = ready.poll()) != null) {
+                    connection.signalled.set(false);
+                    prepare(connection);
+                }
+                selector.select(reconnectDelay);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key, (Connection) key.attachment());
+                }
+                for (Connection c : connections.values()) {
+                    if (c.channel == null && !c.frames.isEmpty()) {
+                        prepare(c);
+                    }
+                }
+            }
+            catch (ClosedSelectorException e) {
+                return;
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void prepare(Connection c) {
+        if (c.channel == null) {
+            if (System.currentTimeMillis() >= c.retryAt) {
+                connect(c);
+            }
+        }
+        else if (c.connected && c.key.isValid()) {
+            c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void connect(Connection c) {
+        try {
+            URI uri = URI.create(c.recipient);
+            int port = (uri.getPort() != -1) ? uri.getPort() : 80;
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            c.channel = channel;
+            if (channel.connect(new InetSocketAddress(uri.getHost(), port + portOffset))) {
+                c.key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, c);
+                connected(c);
+            }
+            else {
+                c.key = channel.register(selector, SelectionKey.OP_CONNECT, c);
+            }
+        }
+        catch (IOException | IllegalArgumentException e) {
+            close(c);
+        }
+    }
+
+    private void connected(Connection c) {
+        c.connected = true;
+        metricsService.increment("tcp.connects");
+    }
+
+    private void handle(SelectionKey key, Connection c) {
+        try {
+            if (key.isConnectable() && c.channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                connected(c);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(c);
+            }
+            // the other node never answers, reading only notices that it closed the connection
+            if (key.isValid() && key.isReadable() && c.channel.read(ByteBuffer.allocate(64)) < 0) {
+                close(c);
+            }
+        }
+        catch (IOException e) {
+            close(c);
+        }
+    }
+
+    /**
+     * Writes as many waiting frames as the socket takes with one gathering write
+     */
+    private void write(Connection c) throws IOException {
+        ByteBuffer frame;
+        while (c.writing.size() < MAX_GATHER && (frame = c.frames.poll()) != null) {
+            c.writing.addLast(frame);
+        }
+        if (!c.writing.isEmpty()) {
+            c.channel.write(c.writing.toArray(new ByteBuffer[0]));
+            int written = 0;
+            while (!c.writing.isEmpty() && !c.writing.peekFirst().hasRemaining()) {
+                c.writing.pollFirst();
+                written++;
+            }
+            c.queued.addAndGet(-written);
+            metricsService.add("tcp.sent", written);
+        }
+        if (c.writing.isEmpty() && c.frames.isEmpty()) {
+            c.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void close(Connection c) {
+        if (c.key != null) {
+            c.key.cancel();
+        }
+        if (c.channel != null) {
+            try {
+                c.channel.close();
+            }
+            catch (IOException e) {
+                // closed anyway
+            }
+        }
+        if (c.connected) {
+            metricsService.increment("tcp.disconnects");
+        }
+        else {
+            metricsService.increment("tcp.connectFailures");
+        }
+        c.channel = null;
+        c.key = null;
+        c.connected = false;
+        c.retryAt = System.currentTimeMillis() + reconnectDelay;
+        int dropped = c.writing.size();
+        c.writing.clear();
+        while (c.frames.poll() != null) {
+            dropped++;
+        }
+        c.queued.addAndGet(-dropped);
+        metricsService.add("tcp.dropped", dropped);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            selector.close();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Connection c : connections.values()) {
+            if (c.channel != null) {
+                try {
+                    c.channel.close();
+                }
+                catch (IOException e) {
+                    // shutting down
+                }
+            }
+        }
+    }
+
+    /**
+     * The frames for one node, the channel and the frames being written belong to the selector thread
+     */
+    private static final class Connection {
+
+        private final String recipient;
+        private final Queue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean signalled = new AtomicBoolean();
+        private final Deque<ByteBuffer> writing = new ArrayDeque<>();
+        private SocketChannel channel;
+        private SelectionKey key;
+        private volatile boolean connected;
+        private long retryAt;
+
+        private Connection(String recipient) {
+            this.recipient = recipient;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package dds20.service;
+
+import dds20.rest.dto.TimelineGetDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tracing Service
+ * This class hands out timestamps and trace/span ids for the log entries and collects the timelines of
+ * other nodes. A transaction is one trace, every log entry is one span, and a receive entry points to
+ * the send entry of the other node as its parent.
+ */
+@Service
+public class TracingService {
+
+    private final RestTemplate restTemplate;
+
+    @Value("${dds20.tracing.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    public TracingService(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Current epoch time in microseconds
+     */
+    public long now() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    }
+
+    /**
+     * Returns a new random trace or span id, or null if tracing is disabled
+     */
+    public Long newId() {
+        if (!enabled) {
+            return null;
+        }
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    /**
+     * Fetches the timeline of the session from another node, which includes that node's subtree
+     */
+    public List<TimelineGetDTO> fetchTimeline(String node, String session) {
+        try {
+            TimelineGetDTO[] timeline = restTemplate.getForObject(node + "/timeline?session={session}",
+                    TimelineGetDTO[].class, session);
+            return (timeline != null) ? Arrays.asList(timeline) : Collections.emptyList();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+}
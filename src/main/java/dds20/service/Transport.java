@@ -0,0 +1,33 @@
+package dds20.service;
+
+import dds20.rest.dto.InquiryPostDTO;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
+import org.springframework.http.HttpEntity;
+
+/**
+ * Transport
+ * The way protocol messages leave a node. The server sends them over HTTP with the OutboxService,
+ * the simulation delivers them through its in-memory network.
+ */
+public interface Transport {
+
+    /**
+     * Returns true if deferred messages may wait to be piggybacked
+     */
+    boolean isEnabled();
+
+    /**
+     * The sequence number of the send and the trace context are passed beside the request, so the cached
+     * request of a session is sent unchanged
+     * Without them the message keeps the sequence number and trace context it carries itself
+     */
+    void send(String recipient, String session, HttpEntity<MessagePostDTO> request, Long seq, Long traceId,
+              Long spanId);
+
+    void defer(String recipient, String session, MessagePostDTO message, Long seq, Long traceId, Long spanId);
+
+    void sendInquiry(String recipient, String session, HttpEntity<InquiryPostDTO> request);
+
+    void sendPaxos(String recipient, String session, PaxosPostDTO message);
+}
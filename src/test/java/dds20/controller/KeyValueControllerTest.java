@@ -0,0 +1,103 @@
+package dds20.controller;
+
+import dds20.entity.Opcode;
+import dds20.service.KeyValueStore;
+import dds20.service.MetricsService;
+import dds20.service.Shard;
+import dds20.service.ShardRouter;
+import dds20.simulation.InMemoryKeyValueRepository;
+import dds20.simulation.NoopTransactionManager;
+import dds20.simulation.SimulatedNetwork;
+import dds20.simulation.SimulatedNode;
+import dds20.simulation.VirtualScheduler;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs transactions on simulated nodes and reads the writes back through GET /kv, and restarts a store
+ * on the rows of a prepared transaction
+ */
+class KeyValueControllerTest {
+
+    private static final String SESSION = "kv";
+    private static final String COORDINATOR = "sim://n0";
+
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final SimulatedNetwork network = new SimulatedNetwork(scheduler, new Random(1));
+
+    @Test
+    void committedCoordinatorWriteIsVisible() {
+        SimulatedNode coordinator = setup(true);
+        new KeyValueController(coordinator.getKeyValueStore()).postWrites(SESSION, Collections.singletonMap("a", "1"));
+
+        run(coordinator);
+
+        assertTrue(coordinator.getRecords(SESSION).contains(Opcode.COMMIT));
+        assertEquals("1", new KeyValueController(coordinator.getKeyValueStore()).getValue("a"));
+    }
+
+    @Test
+    void abortedCoordinatorWriteIsNotVisible() {
+        SimulatedNode coordinator = setup(false);
+        new KeyValueController(coordinator.getKeyValueStore()).postWrites(SESSION, Collections.singletonMap("a", "1"));
+
+        run(coordinator);
+
+        assertTrue(coordinator.getRecords(SESSION).contains(Opcode.ABORT));
+        assertThrows(ResponseStatusException.class,
+                () -> new KeyValueController(coordinator.getKeyValueStore()).getValue("a"));
+    }
+
+    @Test
+    void preparedWriteSurvivesRestart() {
+        ShardRouter shardRouter = new ShardRouter(Collections.singletonList(new Shard(0, scheduler)));
+        InMemoryKeyValueRepository repository = new InMemoryKeyValueRepository();
+        KeyValueStore store = new KeyValueStore(new MetricsService(), shardRouter, repository,
+                new NoopTransactionManager());
+        store.stage(SESSION, Collections.singletonMap("a", "1"));
+        scheduler.runUntil(1, now -> false);
+        assertTrue(store.prepare(SESSION));
+
+        KeyValueStore restarted = new KeyValueStore(new MetricsService(), shardRouter, repository,
+                new NoopTransactionManager());
+        assertEquals(Collections.singletonList(SESSION), restarted.getPrepared());
+        restarted.stage("other", Collections.singletonMap("a", "2"));
+        scheduler.runUntil(2, now -> false);
+        assertFalse(restarted.prepare("other"));
+
+        restarted.commit(SESSION);
+        assertEquals("1", new KeyValueController(restarted).getValue("a"));
+        assertEquals("1", new KeyValueStore(new MetricsService(), shardRouter, repository,
+                new NoopTransactionManager()).get("a"));
+    }
+
+    /**
+     * A coordinator with two subordinates, the second one votes as given
+     */
+    private SimulatedNode setup(boolean vote) {
+        network.setDelay(1, 10);
+        SimulatedNode coordinator = new SimulatedNode(COORDINATOR, network, scheduler);
+        SimulatedNode first = new SimulatedNode("sim://n1", network, scheduler);
+        SimulatedNode second = new SimulatedNode("sim://n2", network, scheduler);
+        coordinator.setup(SESSION, COORDINATOR, Arrays.asList(first.getUrl(), second.getUrl()), true, "never",
+                "central", Collections.emptyList());
+        first.setup(SESSION, COORDINATOR, Collections.emptyList(), true, "never", "central", Collections.emptyList());
+        second.setup(SESSION, COORDINATOR, Collections.emptyList(), vote, "never", "central", Collections.emptyList());
+        return coordinator;
+    }
+
+    private void run(SimulatedNode coordinator) {
+        coordinator.start(SESSION);
+        scheduler.runUntil(30_000, now -> coordinator.getRecords(SESSION).contains(Opcode.END));
+        scheduler.shutdown();
+    }
+}
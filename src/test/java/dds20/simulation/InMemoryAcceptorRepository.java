@@ -0,0 +1,36 @@
+package dds20.simulation;
+
+import dds20.entity.Acceptor;
+import dds20.repository.AcceptorRepository;
+
+import java.util.Collection;
+
+public class InMemoryAcceptorRepository extends InMemoryRepository<Acceptor, Long> implements AcceptorRepository {
+
+    private long nextId = 1;
+
+    @Override
+    protected Long getId(Acceptor acceptor) {
+        return acceptor.getId();
+    }
+
+    @Override
+    protected void assignId(Acceptor acceptor) {
+        acceptor.setId(nextId++);
+    }
+
+    @Override
+    public Acceptor findBySessionAndInstance(String session, Long instance) {
+        return selectLast(a -> a.getSession().equals(session) && a.getInstance().equals(instance));
+    }
+
+    @Override
+    public int deleteAllBySessionIn(Collection<String> sessions) {
+        return deleteWhere(a -> sessions.contains(a.getSession()));
+    }
+
+    @Override
+    public int deleteAllByUpdatedBefore(long time) {
+        return deleteWhere(a -> a.getUpdated() < time);
+    }
+}
@@ -0,0 +1,95 @@
+package dds20.simulation;
+
+import dds20.entity.Data;
+import dds20.entity.Event;
+import dds20.repository.DataRepository;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+public class InMemoryDataRepository extends InMemoryRepository<Data, Long> implements DataRepository {
+
+    private long nextId = 1;
+
+    @Override
+    protected Long getId(Data data) {
+        return data.getId();
+    }
+
+    @Override
+    protected void assignId(Data data) {
+        data.setId(nextId++);
+    }
+
+    @Override
+    public Data findByTransId(Integer transId) {
+        return selectLast(d -> Objects.equals(d.getTransId(), transId));
+    }
+
+    @Override
+    public List<Data> findAllByIsStatus(Boolean status) {
+        return select(d -> Objects.equals(d.getIsStatus(), status));
+    }
+
+    @Override
+    public Data findTopByIsStatusFalseOrderByIdDesc() {
+        return selectLast(d -> !d.getIsStatus());
+    }
+
+    @Override
+    public Data findTopByIsStatusFalseAndSessionOrderByIdDesc(String session) {
+        return selectLast(d -> !d.getIsStatus() && d.getSession().equals(session));
+    }
+
+    @Override
+    public Data findTopByIsStatusFalseAndSessionAndIdLessThanOrderByIdDesc(String session, Long id) {
+        return selectLast(d -> !d.getIsStatus() && d.getSession().equals(session) && d.getId() < id);
+    }
+
+    @Override
+    public Data findTopBySessionAndEventOrderByIdDesc(String session, Event event) {
+        return selectLast(d -> d.getSession().equals(session) && d.getEvent() == event);
+    }
+
+    @Override
+    public List<Data> findAllBySessionOrderByIdAsc(String session) {
+        return select(d -> d.getSession().equals(session));
+    }
+
+    @Override
+    public List<Data> findAllBySessionAndIdGreaterThanOrderByIdAsc(String session, Long id, Pageable pageable) {
+        return page(id, pageable, d -> d.getSession().equals(session));
+    }
+
+    @Override
+    public List<Data> findAllByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable) {
+        return page(id, pageable, d -> true);
+    }
+
+    private List<Data> page(Long id, Pageable pageable, Predicate<Data> predicate) {
+        List<Data> result = new ArrayList<>();
+        for (Data data : rows.tailMap(id, false).values()) {
+            if (result.size() == pageable.getPageSize()) {
+                break;
+            }
+            if (predicate.test(data)) {
+                result.add(data);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int deleteAllBySessionIn(Collection<String> sessions) {
+        return deleteWhere(d -> sessions.contains(d.getSession()));
+    }
+
+    @Override
+    public int deleteAllBySessionExcept(String session, Long id) {
+        return deleteWhere(d -> d.getSession().equals(session) && !d.getId().equals(id));
+    }
+}
@@ -0,0 +1,41 @@
+package dds20.simulation;
+
+import dds20.entity.KeyValue;
+import dds20.repository.KeyValueRepository;
+
+import java.util.Collection;
+
+public class InMemoryKeyValueRepository extends InMemoryRepository<KeyValue, Long> implements KeyValueRepository {
+
+    private long nextId = 1;
+
+    @Override
+    protected Long getId(KeyValue keyValue) {
+        return keyValue.getId();
+    }
+
+    @Override
+    protected void assignId(KeyValue keyValue) {
+        keyValue.setId(nextId++);
+    }
+
+    @Override
+    public int deleteCommitted(Collection<String> keys) {
+        return deleteWhere(v -> v.getSession() == null && keys.contains(v.getKey()));
+    }
+
+    @Override
+    public int commitSession(String session) {
+        int updated = 0;
+        for (KeyValue v : select(v -> session.equals(v.getSession()))) {
+            v.setSession(null);
+            updated++;
+        }
+        return updated;
+    }
+
+    @Override
+    public int deleteAllBySession(String session) {
+        return deleteWhere(v -> session.equals(v.getSession()));
+    }
+}
@@ -0,0 +1,42 @@
+package dds20.simulation;
+
+import dds20.entity.Node;
+import dds20.repository.NodeRepository;
+
+import java.util.Collection;
+
+public class InMemoryNodeRepository extends InMemoryRepository<Node, Long> implements NodeRepository {
+
+    private long nextId = 1;
+
+    @Override
+    protected Long getId(Node node) {
+        return node.getId();
+    }
+
+    @Override
+    protected void assignId(Node node) {
+        node.setId(nextId++);
+    }
+
+    @Override
+    public Node findBySession(String session) {
+        return selectLast(n -> n.getSession().equals(session));
+    }
+
+    @Override
+    public int deleteSubordinatesBySessionIn(Collection<String> sessions) {
+        // the subordinates are part of the node object and go with it
+        return 0;
+    }
+
+    @Override
+    public int deleteAcceptorsBySessionIn(Collection<String> sessions) {
+        return 0;
+    }
+
+    @Override
+    public int deleteAllBySessionIn(Collection<String> sessions) {
+        return deleteWhere(n -> sessions.contains(n.getSession()));
+    }
+}
@@ -0,0 +1,24 @@
+package dds20.simulation;
+
+import dds20.entity.Peer;
+import dds20.repository.PeerRepository;
+
+public class InMemoryPeerRepository extends InMemoryRepository<Peer, Integer> implements PeerRepository {
+
+    private int nextId = 1;
+
+    @Override
+    protected Integer getId(Peer peer) {
+        return peer.getId();
+    }
+
+    @Override
+    protected void assignId(Peer peer) {
+        peer.setId(nextId++);
+    }
+
+    @Override
+    public Peer findByUrl(String url) {
+        return selectLast(p -> p.getUrl().equals(url));
+    }
+}
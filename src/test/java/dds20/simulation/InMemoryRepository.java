@@ -0,0 +1,188 @@
+package dds20.simulation;
+
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * In-Memory Repository
+ * A repository over a sorted map for the simulation. It implements the part of JpaRepository the services
+ * use, the derived queries of the concrete repositories are written against the map by hand.
+ */
+public abstract class InMemoryRepository<T, ID extends Comparable<ID>> implements JpaRepository<T, ID> {
+
+    protected final TreeMap<ID, T> rows = new TreeMap<>();
+
+    protected abstract ID getId(T entity);
+
+    /**
+     * Sets the next id on a new entity
+     */
+    protected abstract void assignId(T entity);
+
+    protected List<T> select(Predicate<T> predicate) {
+        List<T> result = new ArrayList<>();
+        for (T row : rows.values()) {
+            if (predicate.test(row)) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    protected T selectLast(Predicate<T> predicate) {
+        for (T row : rows.descendingMap().values()) {
+            if (predicate.test(row)) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    protected int deleteWhere(Predicate<T> predicate) {
+        int size = rows.size();
+        rows.values().removeIf(predicate);
+        return size - rows.size();
+    }
+
+    @Override
+    public <S extends T> S save(S entity) {
+        if (getId(entity) == null) {
+            assignId(entity);
+        }
+        rows.put(getId(entity), entity);
+        return entity;
+    }
+
+    @Override
+    public <S extends T> S saveAndFlush(S entity) {
+        return save(entity);
+    }
+
+    @Override
+    public <S extends T> List<S> saveAll(Iterable<S> entities) {
+        List<S> result = new ArrayList<>();
+        for (S entity : entities) {
+            result.add(save(entity));
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<T> findById(ID id) {
+        return Optional.ofNullable(rows.get(id));
+    }
+
+    @Override
+    public boolean existsById(ID id) {
+        return rows.containsKey(id);
+    }
+
+    @Override
+    public List<T> findAll() {
+        return new ArrayList<>(rows.values());
+    }
+
+    @Override
+    public List<T> findAllById(Iterable<ID> ids) {
+        List<T> result = new ArrayList<>();
+        for (ID id : ids) {
+            findById(id).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public long count() {
+        return rows.size();
+    }
+
+    @Override
+    public void deleteById(ID id) {
+        rows.remove(id);
+    }
+
+    @Override
+    public void delete(T entity) {
+        rows.remove(getId(entity));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends T> entities) {
+        for (T entity : entities) {
+            delete(entity);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        rows.clear();
+    }
+
+    @Override
+    public void deleteInBatch(Iterable<T> entities) {
+        deleteAll(entities);
+    }
+
+    @Override
+    public void deleteAllInBatch() {
+        deleteAll();
+    }
+
+    @Override
+    public T getOne(ID id) {
+        return rows.get(id);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public List<T> findAll(Sort sort) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Page<T> findAll(Pageable pageable) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends T> Optional<S> findOne(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends T> List<S> findAll(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends T> List<S> findAll(Example<S> example, Sort sort) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends T> Page<S> findAll(Example<S> example, Pageable pageable) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends T> long count(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends T> boolean exists(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,231 @@
+package dds20.simulation;
+
+import dds20.entity.Opcode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Scenario
+ * One transaction over a random topology, with random votes, crashes (dieAfter), message delays, losses and
+ * a partition, all drawn from the seed. After the run the records of all nodes are checked:
+ * - agreement: no node commits while another aborts
+ * - validity: nothing commits if a node votes NO
+ * - termination: the coordinator wrote END and every participant that took part decided before the deadline
+ * With Paxos Commit three more nodes take part as acceptors only.
+ */
+public class Scenario {
+
+    private static final String SESSION = "sim";
+    private static final String[] DIE_AFTER = {"prepare", "vote", "commit/abort", "result"};
+    private static final long[] MAX_DELAYS = {1, 10, 100, 1000};
+    private static final double[] LOSSES = {0, 0.01, 0.1, 0.3};
+
+    private final long seed;
+    private final Random random;
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final SimulatedNetwork network;
+    private final Map<String, SimulatedNode> nodes = new LinkedHashMap<>();
+    private final Map<String, Boolean> votes = new LinkedHashMap<>();
+    private final List<String> description = new ArrayList<>();
+    private String root;
+
+    public Scenario(long seed) {
+        this.seed = seed;
+        // consecutive small seeds give almost the same first numbers, so they are spread out first
+        this.random = new Random(seed * 0x9E3779B97F4A7C15L);
+        this.network = new SimulatedNetwork(scheduler, random);
+        build();
+    }
+
+    private void build() {
+        int subordinates = 1 + random.nextInt(4);
+        root = url(0);
+        List<String> children = new ArrayList<>();
+        Map<String, List<String>> tree = new LinkedHashMap<>();
+        Map<String, String> parents = new LinkedHashMap<>();
+        for (int i = 1; i <= subordinates; i++) {
+            children.add(url(i));
+            parents.put(url(i), root);
+        }
+        tree.put(root, children);
+        // sometimes the last subordinate coordinates a subtree of its own, otherwise the root may prepare a chain
+        String mode = "central";
+        if (random.nextDouble() < 0.3) {
+            String intermediate = url(subordinates);
+            List<String> grandChildren = new ArrayList<>();
+            for (int i = 1; i <= 1 + random.nextInt(2); i++) {
+                String child = url(subordinates + i);
+                grandChildren.add(child);
+                parents.put(child, intermediate);
+            }
+            tree.put(intermediate, grandChildren);
+        }
+        else if (random.nextDouble() < 0.3) {
+            mode = "linear";
+        }
+
+        List<String> all = new ArrayList<>();
+        all.add(root);
+        all.addAll(parents.keySet());
+        List<String> acceptors = new ArrayList<>();
+        if (mode.equals("central") && random.nextDouble() < 0.3) {
+            for (int i = 0; i < 3; i++) {
+                acceptors.add("sim://a" + i);
+            }
+        }
+        for (String url : all) {
+            nodes.put(url, new SimulatedNode(url, network, scheduler));
+        }
+        for (String url : acceptors) {
+            nodes.put(url, new SimulatedNode(url, network, scheduler));
+        }
+        for (String url : all) {
+            boolean vote = random.nextDouble() < 0.8;
+            String dieAfter = (random.nextDouble() < 0.3) ? DIE_AFTER[random.nextInt(DIE_AFTER.length)] : "never";
+            List<String> subs = tree.getOrDefault(url, new ArrayList<>());
+            String coordinator = url.equals(root) ? root : parents.get(url);
+            nodes.get(url).setup(SESSION, coordinator, subs, vote, dieAfter, url.equals(root) ? mode : "central",
+                    url.equals(root) ? acceptors : new ArrayList<>());
+            // the root coordinator has no vote of its own
+            if (!url.equals(root)) {
+                votes.put(url, vote);
+            }
+            description.add(String.format("%s vote=%s dieAfter=%s subordinates=%s", url, vote ? "YES" : "NO", dieAfter, subs));
+        }
+
+        long maxDelay = MAX_DELAYS[random.nextInt(MAX_DELAYS.length)];
+        double loss = LOSSES[random.nextInt(LOSSES.length)];
+        description.add("mode=" + mode + (acceptors.isEmpty() ? "" : " acceptors=" + acceptors));
+        network.setDelay(1, maxDelay);
+        network.setLoss(loss);
+        description.add(String.format("delay=1..%dms loss=%.2f", maxDelay, loss));
+        if (random.nextDouble() < 0.3) {
+            String node = all.get(random.nextInt(all.size()));
+            long from = random.nextInt(10_000);
+            long to = from + 1 + random.nextInt(30_000);
+            network.addPartition(node, from, to);
+            description.add(String.format("partition of %s during %d..%dms", node, from, to));
+        }
+    }
+
+    private static String url(int i) {
+        return "sim://n" + i;
+    }
+
+    /**
+     * Runs the transaction until everybody decided, plus a grace period for late messages, or until the deadline
+     */
+    public Result run(long deadline, long grace) {
+        nodes.get(root).start(SESSION);
+        long[] nextCheck = {1000};
+        long[] terminatedAt = {-1};
+        scheduler.runUntil(deadline, now -> {
+            if (now < nextCheck[0]) {
+                return false;
+            }
+            nextCheck[0] = now + 1000;
+            if (terminatedAt[0] < 0 && isTerminated()) {
+                terminatedAt[0] = now;
+            }
+            return terminatedAt[0] >= 0 && now >= terminatedAt[0] + grace;
+        });
+        scheduler.shutdown();
+        return check(terminatedAt[0]);
+    }
+
+    private boolean isTerminated() {
+        for (Map.Entry<String, SimulatedNode> e : nodes.entrySet()) {
+            List<Opcode> records = e.getValue().getRecords(SESSION);
+            // a participant that never heard of the transaction has nothing to decide
+            if (e.getKey().equals(root) ? !records.contains(Opcode.END)
+                    : !records.isEmpty() && !records.contains(Opcode.COMMIT) && !records.contains(Opcode.ABORT)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Result check(long terminatedAt) {
+        Result result = new Result(seed, terminatedAt, network.getSent(), network.getDropped());
+        boolean commit = false;
+        boolean abort = false;
+        for (Map.Entry<String, SimulatedNode> e : nodes.entrySet()) {
+            List<Opcode> records = e.getValue().getRecords(SESSION);
+            boolean nodeCommit = records.contains(Opcode.COMMIT);
+            boolean nodeAbort = records.contains(Opcode.ABORT);
+            if (nodeCommit && nodeAbort) {
+                result.violations.add("agreement: " + e.getKey() + " wrote COMMIT and ABORT");
+            }
+            commit |= nodeCommit;
+            abort |= nodeAbort;
+        }
+        if (commit && abort) {
+            result.violations.add("agreement: some nodes committed, others aborted");
+        }
+        if (commit && votes.containsValue(false)) {
+            result.violations.add("validity: committed although a node voted NO");
+        }
+        if (terminatedAt < 0) {
+            result.violations.add("termination: not all nodes decided before the deadline");
+        }
+        result.outcome = commit ? Opcode.COMMIT : abort ? Opcode.ABORT : null;
+        return result;
+    }
+
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>(description);
+        for (SimulatedNode node : nodes.values()) {
+            lines.add("== " + node.getUrl());
+            lines.addAll(node.getLog(SESSION));
+        }
+        return lines;
+    }
+
+    public static final class Result {
+
+        private final long seed;
+        private final long terminatedAt;
+        private final long sent;
+        private final long dropped;
+        private final List<String> violations = new ArrayList<>();
+        private Opcode outcome;
+
+        private Result(long seed, long terminatedAt, long sent, long dropped) {
+            this.seed = seed;
+            this.terminatedAt = terminatedAt;
+            this.sent = sent;
+            this.dropped = dropped;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * Virtual time in ms at which all nodes had decided, -1 if they did not
+         */
+        public long getTerminatedAt() {
+            return terminatedAt;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        public List<String> getViolations() {
+            return violations;
+        }
+
+        public Opcode getOutcome() {
+            return outcome;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package dds20.simulation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated Network
+ * Delivers the messages between the simulated nodes through the virtual scheduler. Every message gets a
+ * random delay and may be lost, and a node can be cut off for a time window. All randomness comes from
+ * one seeded generator, so a run is reproduced by its seed.
+ */
+public class SimulatedNetwork {
+
+    private final VirtualScheduler scheduler;
+    private final Random random;
+    private final Map<String, SimulatedNode> nodes = new LinkedHashMap<>();
+    private final List<Partition> partitions = new ArrayList<>();
+
+    private long minDelay = 1;
+    private long maxDelay = 10;
+    private double loss;
+
+    private long sent;
+    private long dropped;
+
+    public SimulatedNetwork(VirtualScheduler scheduler, Random random) {
+        this.scheduler = scheduler;
+        this.random = random;
+    }
+
+    public void setDelay(long minDelay, long maxDelay) {
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    public void setLoss(double loss) {
+        this.loss = loss;
+    }
+
+    /**
+     * Cuts the node off from all other nodes during [from, to) of virtual time
+     */
+    public void addPartition(String node, long from, long to) {
+        partitions.add(new Partition(node, from, to));
+    }
+
+    public void register(SimulatedNode node) {
+        nodes.put(node.getUrl(), node);
+    }
+
+    public SimulatedNode getNode(String url) {
+        return nodes.get(url);
+    }
+
+    public List<SimulatedNode> getNodes() {
+        return new ArrayList<>(nodes.values());
+    }
+
+    /**
+     * Delivers to the recipient after a random delay, unless the message is lost or a partition is in the way
+     */
+    public void send(String sender, String recipient, Delivery delivery) {
+        sent++;
+        SimulatedNode target = nodes.get(recipient);
+        if (target == null || random.nextDouble() < loss || isPartitioned(sender, recipient)) {
+            dropped++;
+            return;
+        }
+        long delay = minDelay + (long) (random.nextDouble() * (maxDelay - minDelay + 1));
+        scheduler.schedule(() -> delivery.deliver(target), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isPartitioned(String sender, String recipient) {
+        long now = scheduler.now();
+        for (Partition partition : partitions) {
+            if (partition.from <= now && now < partition.to
+                    && (partition.node.equals(sender) || partition.node.equals(recipient))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public interface Delivery {
+        void deliver(SimulatedNode target);
+    }
+
+    private static final class Partition {
+
+        private final String node;
+        private final long from;
+        private final long to;
+
+        private Partition(String node, long from, long to) {
+            this.node = node;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
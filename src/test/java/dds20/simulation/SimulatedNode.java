@@ -0,0 +1,193 @@
+package dds20.simulation;
+
+import dds20.entity.Data;
+import dds20.entity.LogType;
+import dds20.entity.Node;
+import dds20.entity.Opcode;
+import dds20.rest.dto.InquiryPostDTO;
+import dds20.rest.dto.MessagePostDTO;
+import dds20.rest.dto.PaxosPostDTO;
+import dds20.rest.mapper.DTOMapper;
+import dds20.service.AcceptorService;
+import dds20.service.AdmissionService;
+import dds20.service.CompactionService;
+import dds20.service.DataService;
+import dds20.service.DecisionCache;
+import dds20.service.FailureDetector;
+import dds20.service.KeyValueStore;
+import dds20.service.MetricsService;
+import dds20.service.NodeService;
+import dds20.service.PeerService;
+import dds20.service.ResultService;
+import dds20.service.Shard;
+import dds20.service.ShardRouter;
+import dds20.service.TracingService;
+import dds20.service.Transport;
+import org.springframework.http.HttpEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simulated Node
+ * One server in the simulation: the real DataService and its services on in-memory repositories, a
+ * single shard on the virtual scheduler, and the simulated network as transport. Incoming messages take
+ * the same path as in the DataController.
+ */
+public class SimulatedNode implements Transport {
+
+    private final String url;
+    private final SimulatedNetwork network;
+
+    private final InMemoryDataRepository dataRepository = new InMemoryDataRepository();
+    private final NodeService nodeService;
+    private final PeerService peerService;
+    private final DataService dataService;
+    private final KeyValueStore keyValueStore;
+
+    public SimulatedNode(String url, SimulatedNetwork network, VirtualScheduler scheduler) {
+        this.url = url;
+        this.network = network;
+
+        InMemoryNodeRepository nodeRepository = new InMemoryNodeRepository();
+        PlatformTransactionManager transactionManager = new NoopTransactionManager();
+        MetricsService metricsService = new MetricsService();
+        this.nodeService = new NodeService(nodeRepository);
+        this.peerService = new PeerService(new InMemoryPeerRepository(), transactionManager);
+        TracingService tracingService = new TracingService(null) {
+            @Override
+            public long now() {
+                return scheduler.now() * 1_000L;
+            }
+        };
+        ShardRouter shardRouter = new ShardRouter(Collections.singletonList(new Shard(0, scheduler)));
+        this.keyValueStore = new KeyValueStore(metricsService, shardRouter, new InMemoryKeyValueRepository(),
+                transactionManager);
+        AcceptorService acceptorService = new AcceptorService(new InMemoryAcceptorRepository());
+        this.dataService = new DataService(nodeService,
+                new CompactionService(dataRepository, acceptorService, shardRouter, transactionManager),
+                peerService,
+                shardRouter,
+                transactionManager,
+                dataRepository,
+                nodeRepository,
+                this,
+                metricsService,
+                new AdmissionService(metricsService, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 1),
+                tracingService,
+                new DecisionCache(metricsService, 10_000, Long.MAX_VALUE / 2),
+                // the simulated crashes only stop a session, a process-level detector would not see them
+                new FailureDetector(metricsService, null, false, 500, 8, 30_000),
+                acceptorService,
+                keyValueStore,
+                new ResultService(tracingService, metricsService, 0),
+                true,
+                false,
+                2000);
+        network.register(this);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setup(String session, String coordinator, List<String> subordinates, boolean vote, String dieAfter,
+                      String mode, List<String> acceptors) {
+        Node node = new Node();
+        node.setNode(url);
+        node.setSession(session);
+        node.setIsCoordinator(!subordinates.isEmpty());
+        node.setIsSubordinate(coordinator != null && !coordinator.equals(url));
+        node.setCoordinator(coordinator);
+        node.setSubordinates(new ArrayList<>(subordinates));
+        node.setActive(true);
+        node.setVote(vote);
+        node.setDieAfter(dieAfter);
+        node.setMode(mode);
+        node.setAcceptors(new ArrayList<>(acceptors));
+        nodeService.saveNode(node);
+    }
+
+    public KeyValueStore getKeyValueStore() {
+        return keyValueStore;
+    }
+
+    public void start(String session) {
+        dataService.startTransaction(session);
+    }
+
+    /**
+     * Returns the protocol records of the session in the order they were written
+     */
+    public List<Opcode> getRecords(String session) {
+        List<Opcode> records = new ArrayList<>();
+        for (Data data : dataRepository.findAllBySessionOrderByIdAsc(session)) {
+            if (data.getType() == LogType.RECORD) {
+                records.add(data.getOpcode());
+            }
+        }
+        return records;
+    }
+
+    public List<String> getLog(String session) {
+        List<String> log = new ArrayList<>();
+        for (Data data : dataRepository.findAllBySessionOrderByIdAsc(session)) {
+            log.add(String.format("%8.3fs %s", data.getTimeMicros() / 1e6, dataService.renderMessage(data)));
+        }
+        return log;
+    }
+
+    private void receiveMessage(String session, MessagePostDTO message, Long seq) {
+        if (nodeService.isActive(session)) {
+            Data data = DTOMapper.INSTANCE.convertMessagePostDTOtoEntity(message);
+            data.setSession(session);
+            data.setSeq(seq);
+            data.setPeer(peerService.getId(message.getNode()));
+            dataService.receiveMessage(session, data);
+        }
+    }
+
+    private void receiveInquiry(String session, InquiryPostDTO inquiry) {
+        if (nodeService.isActive(session)) {
+            dataService.handleInquiry(session, inquiry.getSender(), inquiry.getTransId(), inquiry.getSpanId());
+        }
+    }
+
+    private void receivePaxos(String session, PaxosPostDTO message) {
+        dataService.handlePaxos(session, message);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    /**
+     * The simulation runs without tracing, so there is no trace context to deliver, only the sequence number
+     */
+    @Override
+    public void send(String recipient, String session, HttpEntity<MessagePostDTO> request, Long seq, Long traceId,
+                     Long spanId) {
+        MessagePostDTO message = request.getBody();
+        network.send(url, recipient, target -> target.receiveMessage(session, message, seq));
+    }
+
+    @Override
+    public void defer(String recipient, String session, MessagePostDTO message, Long seq, Long traceId,
+                      Long spanId) {
+        network.send(url, recipient, target -> target.receiveMessage(session, message, seq));
+    }
+
+    @Override
+    public void sendInquiry(String recipient, String session, HttpEntity<InquiryPostDTO> request) {
+        InquiryPostDTO inquiry = request.getBody();
+        network.send(url, recipient, target -> target.receiveInquiry(session, inquiry));
+    }
+
+    @Override
+    public void sendPaxos(String recipient, String session, PaxosPostDTO message) {
+        network.send(url, recipient, target -> target.receivePaxos(session, message));
+    }
+}
@@ -0,0 +1,111 @@
+package dds20.simulation;
+
+import dds20.entity.Opcode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simulation
+ * Runs many seeded scenarios of the protocol in virtual time and reports invariant violations and the
+ * distribution of the time to decide. A failing seed is replayed with its full log by passing --replay.
+ *
+ * Usage: ./gradlew simulate --args="[scenarios] [first seed] [--replay=seed]"
+ */
+public class Simulation {
+
+    static final long DEADLINE = 600_000;
+    static final long GRACE = 20_000;
+    private static final int EXAMPLES = 5;
+
+    public static void main(String[] args) {
+        int scenarios = 10_000;
+        long firstSeed = 1;
+        Long replay = null;
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--replay=")) {
+                replay = Long.parseLong(arg.substring("--replay=".length()));
+            }
+            else {
+                positional.add(arg);
+            }
+        }
+        if (positional.size() > 0) {
+            scenarios = Integer.parseInt(positional.get(0));
+        }
+        if (positional.size() > 1) {
+            firstSeed = Long.parseLong(positional.get(1));
+        }
+
+        if (replay != null) {
+            replay(replay);
+        }
+        else {
+            explore(scenarios, firstSeed);
+        }
+    }
+
+    private static void replay(long seed) {
+        Scenario scenario = new Scenario(seed);
+        Scenario.Result result = scenario.run(DEADLINE, GRACE);
+        System.out.println("seed " + seed);
+        for (String line : scenario.describe()) {
+            System.out.println(line);
+        }
+        System.out.println("outcome " + result.getOutcome() + ", decided after " + result.getTerminatedAt() + "ms");
+        for (String violation : result.getViolations()) {
+            System.out.println("VIOLATION " + violation);
+        }
+    }
+
+    private static void explore(int scenarios, long firstSeed) {
+        long start = System.nanoTime();
+        Map<String, List<Long>> violations = new LinkedHashMap<>();
+        Map<Opcode, Integer> outcomes = new EnumMap<>(Opcode.class);
+        List<Long> times = new ArrayList<>();
+        long sent = 0;
+        long dropped = 0;
+
+        for (long seed = firstSeed; seed < firstSeed + scenarios; seed++) {
+            Scenario.Result result = new Scenario(seed).run(DEADLINE, GRACE);
+            sent += result.getSent();
+            dropped += result.getDropped();
+            if (result.getOutcome() != null) {
+                outcomes.merge(result.getOutcome(), 1, Integer::sum);
+            }
+            if (result.getTerminatedAt() >= 0) {
+                times.add(result.getTerminatedAt());
+            }
+            for (String violation : result.getViolations()) {
+                violations.computeIfAbsent(violation, k -> new ArrayList<>()).add(seed);
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d scenarios in %.1fs (%.0f/s), %d messages, %d dropped%n",
+                scenarios, seconds, scenarios / seconds, sent, dropped);
+        System.out.println("outcomes " + outcomes);
+        Collections.sort(times);
+        if (!times.isEmpty()) {
+            System.out.printf("time to decide: p50 %dms, p99 %dms, max %dms%n",
+                    percentile(times, 0.5), percentile(times, 0.99), times.get(times.size() - 1));
+        }
+        if (violations.isEmpty()) {
+            System.out.println("no violations");
+        }
+        for (Map.Entry<String, List<Long>> e : violations.entrySet()) {
+            List<Long> seeds = e.getValue();
+            System.out.printf("%d x %s, e.g. seeds %s%n", seeds.size(), e.getKey(),
+                    seeds.subList(0, Math.min(EXAMPLES, seeds.size())));
+        }
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.floor(p * sorted.size())));
+    }
+}
@@ -0,0 +1,29 @@
+package dds20.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs a fixed range of seeds of the simulation, a failing seed is replayed with
+ * ./gradlew simulate --args="--replay=seed"
+ */
+class SimulationTest {
+
+    private static final int SCENARIOS = 2_000;
+
+    @Test
+    void noInvariantIsViolated() {
+        List<String> failures = new ArrayList<>();
+        for (long seed = 1; seed <= SCENARIOS; seed++) {
+            Scenario.Result result = new Scenario(seed).run(Simulation.DEADLINE, Simulation.GRACE);
+            for (String violation : result.getViolations()) {
+                failures.add("seed " + seed + ": " + violation);
+            }
+        }
+        assertEquals(new ArrayList<String>(), failures);
+    }
+}
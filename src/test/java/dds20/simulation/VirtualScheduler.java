@@ -0,0 +1,186 @@
+package dds20.simulation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Virtual Scheduler
+ * An executor with a virtual clock. Tasks run on the calling thread of runUntil, ordered by their due time
+ * and, for equal times, by the order they were scheduled. Time only advances from one task to the next,
+ * so hours of protocol time pass in milliseconds and every run with the same inputs is identical.
+ */
+public class VirtualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+    private boolean shutdown;
+
+    /**
+     * Current virtual time in milliseconds
+     */
+    public long now() {
+        return now;
+    }
+
+    /**
+     * Runs all tasks due until the given virtual time, returns false if the stop condition ended the run early
+     */
+    public boolean runUntil(long time, StopCondition stop) {
+        while (!queue.isEmpty() && queue.peek().due <= time) {
+            Task task = queue.poll();
+            now = task.due;
+            if (task.isCancelled()) {
+                continue;
+            }
+            task.run();
+            if (stop.test(now)) {
+                return false;
+            }
+        }
+        now = Math.max(now, time);
+        return true;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return submit(new Task(command, now + unit.toMillis(delay), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return submit(new Task(command, now + unit.toMillis(initialDelay), unit.toMillis(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return scheduleAtFixedRate(command, initialDelay, delay, unit);
+    }
+
+    private Task submit(Task task) {
+        if (!shutdown) {
+            queue.add(task);
+        }
+        return task;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        queue.clear();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return shutdown;
+    }
+
+    public interface StopCondition {
+        boolean test(long now);
+    }
+
+    private final class Task implements ScheduledFuture<Object>, Runnable {
+
+        private final Runnable command;
+        private final long period;
+        private long due;
+        private long order;
+        private boolean cancelled;
+        private boolean done;
+
+        private Task(Runnable command, long due, long period) {
+            this.command = command;
+            this.due = due;
+            this.period = period;
+            this.order = sequence++;
+        }
+
+        @Override
+        public void run() {
+            command.run();
+            if (period > 0 && !cancelled) {
+                due = now + period;
+                order = sequence++;
+                submit(this);
+            }
+            else {
+                done = true;
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - now, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Task task = (Task) other;
+            int c = Long.compare(due, task.due);
+            return (c != 0) ? c : Long.compare(order, task.order);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done || cancelled;
+        }
+
+        @Override
+        public Object get() throws ExecutionException {
+            throw new ExecutionException(new UnsupportedOperationException("virtual tasks cannot be awaited"));
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws ExecutionException {
+            return get();
+        }
+    }
+}